@@ -0,0 +1,23 @@
+package com.mams.comparator.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler attached, so every result comes with its allocation rate
+ * (gc.alloc.rate.norm is the number of bytes allocated per operation). Accepts the usual JMH command line,
+ * e.g. {@code java -jar target/benchmarks.jar CompareArrays -p size=10000}.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(asList(args));
+        if(!jmhArgs.contains("-prof")) {
+            jmhArgs.add("-prof");
+            jmhArgs.add("gc");
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,75 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ListResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compareArrays on arrays with 10% of their elements modified, matched either by a property (activities by
+ * name), as whole objects (activities.outcome in OBJECT mode) or by position (outcomes without a matching
+ * property, aligned in ORDERED mode).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompareArraysBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int size;
+
+    @Param({"keyed", "object", "ordered"})
+    public String matching;
+
+    private ArrayNode srcJsonNode, destJsonNode;
+
+    private ComparisonPlan arrayPlan;
+
+    private DiffPath path;
+
+    @Setup
+    public void setUp() {
+        CompareJsons.initializeComparison();
+        SyntheticProgramGenerator generator = new SyntheticProgramGenerator(42);
+        if("keyed".equals(matching)) {
+            srcJsonNode = generator.activities(size);
+            arrayPlan = CompareJsons.getComparisonPlan().child("activities");
+            path = DiffPath.ROOT.field("activities");
+        } else if("object".equals(matching)) {
+            srcJsonNode = generator.outcomes(size);
+            arrayPlan = CompareJsons.getComparisonPlan().child("activities").child("outcome");
+            path = DiffPath.ROOT.field("activities").field("outcome");
+        } else {
+            srcJsonNode = generator.outcomes(size);
+            arrayPlan = ComparisonPlan.compile(new ListResourceBundle() {
+                @Override
+                protected Object[][] getContents() {
+                    return new Object[0][];
+                }
+            }, OrderedArrayDiff.ORDERED_MATCHING).child("outcomes");
+            path = DiffPath.ROOT.field("outcomes");
+        }
+        destJsonNode = generator.mutate(srcJsonNode.deepCopy(), 0.1);
+    }
+
+    @Benchmark
+    public DiffCollector compareArrays() {
+        DiffCollector diffs = new DiffCollector();
+        CompareJsons.compareArrays(srcJsonNode, destJsonNode, arrayPlan, path, new ComparisonContext(), diffs);
+        return diffs;
+    }
+}
@@ -0,0 +1,75 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compareObject on a whole program against an identical, a lightly mutated (1% of activities) and a heavily
+ * mutated (50% of activities, reordered and partly replaced) copy, both held as Jackson trees or as tapes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompareObjectBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int activities;
+
+    @Param({"identical", "light", "heavy"})
+    public String mutation;
+
+    @Param({"tree", "tape"})
+    public String representation;
+
+    private JsonNode srcJsonNode;
+
+    private JsonNode destJsonNode;
+
+    @Setup
+    public void setUp() throws IOException {
+        CompareJsons.initializeComparison();
+        SyntheticProgramGenerator generator = new SyntheticProgramGenerator(42);
+        ObjectNode program = generator.program(activities);
+        srcJsonNode = program;
+        switch (mutation) {
+            case "identical":
+                destJsonNode = program.deepCopy();
+                break;
+            case "light":
+                destJsonNode = generator.mutate(program, 0.01);
+                break;
+            default:
+                destJsonNode = generator.mutate(program, 0.5);
+        }
+        if("tape".equals(representation)) {
+            ObjectMapper objectMapper = CompareJsons.getObjectMapper();
+            srcJsonNode = JsonTape.read(objectMapper.writeValueAsBytes(srcJsonNode), objectMapper);
+            destJsonNode = JsonTape.read(objectMapper.writeValueAsBytes(destJsonNode), objectMapper);
+        }
+    }
+
+    @Benchmark
+    public DiffCollector compareObject() {
+        DiffCollector diffs = new DiffCollector();
+        CompareJsons.compareObject(srcJsonNode, destJsonNode, CompareJsons.getComparisonPlan(), DiffPath.ROOT, new ComparisonContext(), diffs);
+        return diffs;
+    }
+}
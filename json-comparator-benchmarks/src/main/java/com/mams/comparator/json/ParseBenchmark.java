@@ -0,0 +1,56 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a program payload into a tree with the shared ObjectMapper, as compareJsons does for both sides, and
+ * into a tape as it does with compare.tape.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int activities;
+
+    private String json;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        CompareJsons.initializeComparison();
+        json = CompareJsons.getObjectMapper().writeValueAsString(new SyntheticProgramGenerator(42).program(activities));
+        bytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public JsonNode readTree() throws IOException {
+        return CompareJsons.getObjectMapper().readTree(json);
+    }
+
+    @Benchmark
+    public JsonNode readTape() throws IOException {
+        return JsonTape.read(bytes, CompareJsons.getObjectMapper());
+    }
+}
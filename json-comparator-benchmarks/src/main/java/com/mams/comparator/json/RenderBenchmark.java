@@ -0,0 +1,87 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering the diffs of a heavily mutated program in each report format. The report is written to a Writer
+ * that discards it, so that only the rendering is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int activities;
+
+    @Param({"table", "jsonl", "jsonpatch"})
+    public String format;
+
+    private DiffCollector diffs;
+
+    private final Writer out = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        CompareJsons.initializeComparison();
+        SyntheticProgramGenerator generator = new SyntheticProgramGenerator(42);
+        ObjectNode srcJsonNode = generator.program(activities);
+        diffs = new DiffCollector();
+        CompareJsons.compareObject(srcJsonNode, generator.mutate(srcJsonNode, 0.5),
+                CompareJsons.getComparisonPlan(), DiffPath.ROOT, new ComparisonContext(), diffs);
+    }
+
+    @Benchmark
+    public void render() throws IOException {
+        try (DiffReporter reporter = createReporter()) {
+            reporter.startProgram("Know Your Numbers");
+            diffs.replayTo(reporter);
+            reporter.endProgram();
+        }
+    }
+
+    private DiffReporter createReporter() throws IOException {
+        switch (format) {
+            case "jsonl":
+                return new JsonLinesDiffReporter(out, CompareJsons.getObjectMapper());
+            case "jsonpatch":
+                return new JsonPatchDiffReporter(out, CompareJsons.getObjectMapper());
+            default:
+                return new TableDiffReporter(out, "qa", "prod");
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generator of program configurations shaped like program-configurations/&#42;/know_your_numbers.json:
+ * top level texts, an activities array keyed by name with nested criteria (keyed by dataType) and outcome,
+ * and a partnerContactList keyed by contactType. The same seed always produces the same documents.
+ */
+final class SyntheticProgramGenerator {
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private static final String[] DATA_TYPES = {
+            "/biometric/BloodSugarNumberActualmgdL", "/biometric/BodyMassIndex", "/biometric/CholesterolRatio",
+            "/biometric/HDLCholesterol", "/biometric/Triglycerides"
+    };
+
+    private static final String[] OPERATORS = {">", ">=", "<", "<=", "!="};
+
+    private final Random random;
+
+    SyntheticProgramGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    ObjectNode program(int activityCount) {
+        ObjectNode program = NODES.objectNode();
+        program.put("id", hex());
+        program.put("name", "Know Your Numbers - " + random.nextInt(100));
+        program.put("bullet1", "Learn more about your BMI, blood glucose levels, and cholesterol");
+        program.put("bullet2", "See if you're at risk for serious health conditions");
+        program.put("bullet3", "Get practical tips for making healthy lifestyle changes");
+        program.put("cost", "Provided by your employer at no cost to you");
+        program.put("type", "BIOMETRIC");
+        program.put("entityKey", "know_your_numbers_" + random.nextInt(1000));
+        program.set("activities", activities(activityCount));
+        ArrayNode contacts = program.putArray("partnerContactList");
+        for (String contactType : new String[]{"PHONE", "SSO_URL", "EMAIL"}) {
+            ObjectNode contact = contacts.addObject();
+            contact.put("contactType", contactType);
+            contact.put("callToAction", "Contact us " + random.nextInt(10));
+            contact.put("contactInformation", "https://partner" + random.nextInt(10) + ".example.com/");
+            contact.put("displayOrder", contacts.size());
+        }
+        return program;
+    }
+
+    /**
+     * An array of activities, matched by name through activities.matching.property.
+     */
+    ArrayNode activities(int size) {
+        return activities(size, "Activity ");
+    }
+
+    private ArrayNode activities(int size, String namePrefix) {
+        ArrayNode activities = NODES.arrayNode();
+        for (int i = 0; i < size; i++) {
+            ObjectNode activity = activities.addObject();
+            activity.put("created_date", 1528242411000L);
+            activity.put("id", hex());
+            activity.put("name", namePrefix + i);
+            activity.put("type", "PROGRAM_DATA");
+            activity.put("frequency", "ANY");
+            ArrayNode criteria = activity.putArray("criteria");
+            for (int c = 0, count = 1 + random.nextInt(DATA_TYPES.length); c < count; c++) {
+                ObjectNode criterion = criteria.addObject();
+                criterion.put("operator", OPERATORS[random.nextInt(OPERATORS.length)]);
+                criterion.put("aggregator", "LATEST");
+                criterion.put("dataType", DATA_TYPES[c]);
+                criterion.put("targetValue", String.valueOf(random.nextInt(200)));
+            }
+            activity.set("outcome", outcome());
+            activity.put("descriptionTemplate", "Complete activity " + i + " to earn points");
+            activity.put("incentiveCapValue", random.nextInt(500));
+            activity.put("displayOrder", i);
+        }
+        return activities;
+    }
+
+    /**
+     * An array of outcomes, matched as a whole since activities.outcome.matching.property is OBJECT.
+     */
+    ArrayNode outcomes(int size) {
+        ArrayNode outcomes = NODES.arrayNode();
+        for (int i = 0; i < size; i++) {
+            outcomes.add(outcome());
+        }
+        return outcomes;
+    }
+
+    /**
+     * A deep copy of the document in which the given share of activities is modified. Above 10% the
+     * activities are also reordered and some of them replaced, as happens when environments drift apart.
+     */
+    ObjectNode mutate(ObjectNode program, double ratio) {
+        ObjectNode mutated = program.deepCopy();
+        ArrayNode activities = (ArrayNode) mutated.get("activities");
+        mutate(activities, ratio);
+        if(ratio > 0.1) {
+            List<JsonNode> reordered = new ArrayList<>();
+            activities.forEach(reordered::add);
+            Collections.shuffle(reordered, random);
+            int replaced = (int) (reordered.size() * ratio / 10);
+            reordered.subList(0, replaced).clear();
+            activities(replaced, "Replacement activity ").forEach(reordered::add);
+            activities.removeAll();
+            activities.addAll(reordered);
+            mutated.put("bullet1", "Learn more about your numbers");
+        }
+        return mutated;
+    }
+
+    /**
+     * Modifies the given share of the elements of an array of activities or outcomes in place.
+     */
+    ArrayNode mutate(ArrayNode elements, double ratio) {
+        for (JsonNode element : elements) {
+            if(random.nextDouble() >= ratio) {
+                continue;
+            }
+            ObjectNode object = (ObjectNode) element;
+            if(object.has("criteria")) {
+                switch (random.nextInt(3)) {
+                    case 0:
+                        object.put("frequency", "ONCE");
+                        break;
+                    case 1:
+                        ((ObjectNode) object.get("criteria").get(0)).put("targetValue", "999");
+                        break;
+                    default:
+                        ((ObjectNode) object.get("outcome")).put("value", random.nextInt(100) + 100);
+                }
+            } else {
+                object.put("value", random.nextInt(100) + 100);
+            }
+        }
+        return elements;
+    }
+
+    private ObjectNode outcome() {
+        ObjectNode outcome = NODES.objectNode();
+        outcome.put("id", hex());
+        outcome.putNull("description");
+        outcome.put("value", random.nextInt(100));
+        return outcome;
+    }
+
+    private String hex() {
+        return Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+    }
+}
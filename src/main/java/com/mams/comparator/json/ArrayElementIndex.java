@@ -0,0 +1,104 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * One-pass index over the elements of a destination array, used to find the partner of each source element
+ * without rescanning the array.
+ *
+ * Elements are keyed by the value of the configured matching property, or by their subtree fingerprint when
+ * matching in OBJECT mode, in which case a candidate is only accepted once it is confirmed equal. Elements
+ * sharing a key are kept in a FIFO queue so that duplicates are paired off in array order, exactly as the
+ * previous linear scan did.
+ */
+final class ArrayElementIndex {
+
+    static final String OBJECT_MATCHING = "OBJECT";
+
+    private final List<JsonNode> elements = new ArrayList<>();
+
+    private final Map<Object, ArrayDeque<Integer>> positionsByKey = new HashMap<>();
+
+    private final boolean[] matched;
+
+    private final String matchingPropertyName;
+
+    private final SubtreeFingerprints fingerprints;
+
+    private long probes;
+
+    ArrayElementIndex(JsonNode arrayNode, String matchingPropertyName, SubtreeFingerprints fingerprints) {
+        this.matchingPropertyName = matchingPropertyName;
+        this.fingerprints = fingerprints;
+        if(nonNull(arrayNode)) {
+            arrayNode.iterator().forEachRemaining(elements::add);
+        }
+        matched = new boolean[elements.size()];
+        for (int i = 0; i < elements.size(); i++) {
+            positionsByKey.computeIfAbsent(keyOf(elements.get(i)), key -> new ArrayDeque<>()).add(i);
+        }
+    }
+
+    /**
+     * Removes and returns the first not yet matched element whose key equals the key of the given node,
+     * or null when there is none.
+     */
+    JsonNode match(JsonNode srcNode) {
+        ArrayDeque<Integer> positions = positionsByKey.get(keyOf(srcNode));
+        probes++;
+        if(positions == null) {
+            return null;
+        }
+        for (Iterator<Integer> candidates = positions.iterator(); candidates.hasNext(); ) {
+            int position = candidates.next();
+            probes++;
+            if(!isObjectMatching() || fingerprints.areEqual(srcNode, elements.get(position))) {
+                candidates.remove();
+                matched[position] = true;
+                return elements.get(position);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Elements never handed out by {@link #match(JsonNode)}, in their original array order.
+     */
+    List<JsonNode> unmatched() {
+        List<JsonNode> remaining = new ArrayList<>();
+        for (int i = 0; i < elements.size(); i++) {
+            if(!matched[i]) {
+                remaining.add(elements.get(i));
+            }
+        }
+        return remaining;
+    }
+
+    int size() {
+        return elements.size();
+    }
+
+    /**
+     * Number of key lookups and candidates looked at so far by {@link #match(JsonNode)}.
+     */
+    long getProbes() {
+        return probes;
+    }
+
+    private Object keyOf(JsonNode node) {
+        return isObjectMatching() ? fingerprints.fingerprint(node) : node.get(matchingPropertyName);
+    }
+
+    private boolean isObjectMatching() {
+        return OBJECT_MATCHING.equals(matchingPropertyName);
+    }
+}
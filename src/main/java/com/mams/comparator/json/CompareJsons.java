@@ -1,24 +1,32 @@
 package com.mams.comparator.json;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.databind.deser.std.UUIDDeserializer;
 import com.fasterxml.jackson.databind.ser.std.UUIDSerializer;
-import io.restassured.RestAssured;
-import io.restassured.builder.RequestSpecBuilder;
-import io.restassured.http.ContentType;
-import io.restassured.specification.RequestSpecification;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.mams.comparator.json.CompareJsons.DiffModes.*;
-import static java.lang.String.format;
 import static java.util.Arrays.asList;
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
@@ -32,71 +40,184 @@ public class CompareJsons {
 
     private static String env1URL, env2URL;
 
-    private static Map<String, List<String>> elementsToCompare = new HashMap<>();
+    private static ComparisonPlan comparisonPlan;
+
+    private static ParallelComparison parallelComparison;
+
+    private static int maxDiffs, maxDepth;
+
+    private static long deadlineMillis;
+
+    private static SnapshotStore snapshotStore;
+
+    private static HttpTransport transport;
+
+    private static boolean offline;
+
+    private static boolean tape;
+
+    private static final Set<String> unconfiguredPaths = ConcurrentHashMap.newKeySet();
 
     private static PropertyResourceBundle getPropertiesBundle(String config) {
         try {
-            return new PropertyResourceBundle(new InputStreamReader(FileReader.class.getResourceAsStream(config)));
+            return new PropertyResourceBundle(new InputStreamReader(CompareJsons.class.getResourceAsStream(config)));
         } catch (IOException e) {
             e.printStackTrace();
         }
         return null;
     }
 
-    private static void initialize(String[] args) {
+    private static void initialize(String[] args) throws IOException {
+        initializeComparison();
+        env1URL = getEndpointURL(args[0]);
+        env2URL = getEndpointURL(args[1]);
+        initializeFetching(Arrays.stream(args).anyMatch(CompareJsons::isSnapshotEnv));
+    }
+
+    /**
+     * Sets up the HTTP transport and, when enabled or needed to read dated snapshots, the snapshot store.
+     */
+    static void initializeFetching(boolean snapshots) throws IOException {
+        if(isNull(System.getProperty("http.maxConnections"))) {
+            System.setProperty("http.maxConnections", String.valueOf(getIntConfig("fetch.parallelism", 8)));
+        }
+        transport = new HttpTransport(getIntConfig("http.connect.timeout.millis", 10000),
+                getIntConfig("http.read.timeout.millis", 60000),
+                getIntConfig("http.retries", 3),
+                getIntConfig("http.retry.backoff.millis", 500),
+                getBooleanConfig("http.relaxed.https"));
+        offline = getBooleanConfig("snapshot.offline");
+        if(getBooleanConfig("snapshot.enabled") || offline || snapshots) {
+            snapshotStore = new SnapshotStore(Paths.get(getConfig("snapshot.directory")),
+                    Long.parseLong(getConfig("snapshot.max.bytes").trim()));
+        }
+    }
+
+    /**
+     * Loads the configuration and everything needed to compare documents, without touching any environment.
+     */
+    static void initializeComparison() {
         configs = getPropertiesBundle("/config.properties");
         objectMapper = getObjectMapper();
-        Enumeration<String> keys = configs.getKeys();
-        while (keys.hasMoreElements()) {
-            String key = keys.nextElement();
-            if(key.endsWith("compare.elements.names")) {
-                elementsToCompare.put(key, Arrays.asList(configs.getString("compare.elements.names").split(",")));
-            }
+        comparisonPlan = ComparisonPlan.compile(configs,
+                getBooleanConfig("compare.unkeyed.arrays") ? OrderedArrayDiff.ORDERED_MATCHING : null);
+        if(getBooleanConfig("compare.parallel") && isNull(parallelComparison)) {
+            parallelComparison = new ParallelComparison(
+                    new ForkJoinPool(getIntConfig("diff.parallelism", Runtime.getRuntime().availableProcessors())),
+                    getIntConfig("compare.parallel.threshold", 20000));
+        }
+        maxDiffs = getIntConfig("compare.max.diffs", 0);
+        maxDepth = getIntConfig("compare.max.depth", 0);
+        deadlineMillis = getIntConfig("compare.deadline.millis", 0);
+        tape = getBooleanConfig("compare.tape");
+    }
+
+    static ComparisonPlan getComparisonPlan() {
+        return comparisonPlan;
+    }
+
+    /**
+     * Context for the comparison of a program, within the configured compare.max.diffs, compare.max.depth and
+     * compare.deadline.millis.
+     */
+    static ComparisonContext createContext() {
+        return new ComparisonContext(maxDiffs, maxDepth, deadlineMillis);
+    }
+
+    /**
+     * Endpoint of an environment, overridable with -D&lt;env&gt;.endpoint.url (e.g. to point at a local stub server).
+     * An environment given as &lt;env&gt;@&lt;yyyy-MM-dd&gt; stands for the snapshot of &lt;env&gt; taken that day.
+     */
+    private static String getEndpointURL(String env) {
+        String key = (isSnapshotEnv(env) ? env.substring(0, env.indexOf('@')) : env) + ".endpoint.url";
+        return System.getProperty(key, configs.getString(key));
+    }
+
+    private static boolean isSnapshotEnv(String env) {
+        return env.indexOf('@') > 0;
+    }
+
+    private static boolean hasEndpoint(String env) {
+        String key = (isSnapshotEnv(env) ? env.substring(0, env.indexOf('@')) : env) + ".endpoint.url";
+        return nonNull(System.getProperty(key)) || configs.containsKey(key);
+    }
+
+    /**
+     * Endpoint of an environment named in a request to the {@link ComparisonServer}, rejecting environments
+     * without an endpoint and snapshots while no snapshot store is set up.
+     */
+    static String getRequestedEndpointURL(String env) {
+        if(!hasEndpoint(env)) {
+            throw new IllegalArgumentException("No endpoint configured for " + env);
+        }
+        if(isSnapshotEnv(env) && isNull(snapshotStore)) {
+            throw new IllegalArgumentException("Snapshots are not enabled, cannot read " + env);
         }
-        env1URL = configs.getString(args[0]+".endpoint.url");
-        env2URL = configs.getString(args[1]+".endpoint.url");
+        return getEndpointURL(env);
     }
 
-    static void testPrint(String[] args) {
-        printRow("Property", args[1], args[2], "Operation", true);
-        printRow("name",
-                                    "111111111111111111111111111111111111111111111111111111111111111111111111",
-                                    "222222222222222222222222222222222222222222222222222222222222222222222222", "MODIFIED", false);
-        printRow("=================================================",
-                "{\"operator\":\">\",\"aggregator\":\"LATEST\",\"dataType\":\"/biometric/BloodSugarNumberActualmgdL\",\"targetValue\":\"0\"}",
-                "4444", "MODIFIED", false);
-        System.exit(0);
+    /**
+     * Value of a configuration key, or null when the key is not configured.
+     */
+    private static String getConfigString(String key) {
+        return configs.containsKey(key) ? configs.getString(key) : null;
+    }
+
+    /**
+     * Value of a configuration key, overridable with -D&lt;key&gt;.
+     */
+    static String getConfig(String key) {
+        return System.getProperty(key, getConfigString(key));
+    }
+
+    static int getIntConfig(String key, int defaultValue) {
+        String value = getConfig(key);
+        return isEmpty(value) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    static boolean getBooleanConfig(String key) {
+        return Boolean.parseBoolean(getConfig(key));
     }
 
     public static void main(String[] args) throws IOException {
 
+        if(nonNull(args) && args.length > 0 && "--serve".equals(args[0])) {
+            serve();
+            return;
+        }
         args = getArgumentsIfRequired(args);
+        if(Files.isDirectory(Paths.get(args[0])) && Files.isDirectory(Paths.get(args[1]))) {
+            compareDirectories(Paths.get(args[0]), Paths.get(args[1]));
+            return;
+        }
         initialize(args);
 
+        List<String> envs = getEnvironments(args);
+        if(envs.size() > 2) {
+            compareEnvironments(envs);
+            return;
+        }
+
         String env1 = args[0];
         String env2 = args[1];
 
-        List<List<String>> programListSource = getPrograms(env1URL);
-        List<List<String>> programListTarget = getPrograms(env2URL);
-
-        programListSource.stream().forEach(srcProgramDetails -> {
-            Optional<List<String>> matchedProgram = programListTarget.stream().filter(trgProgramDetails -> {
-                return srcProgramDetails.get(1).equalsIgnoreCase(trgProgramDetails.get(1));
-            }).findFirst();
-            if(matchedProgram.isPresent()) {
-                try {
-                    System.out.println("\n\n\n");
-                    System.out.println("~~~~~~~~~~~~~ Processing Program: " + srcProgramDetails.get(1) + " ~~~~~~~~~~~~~");
-                    System.out.println();
-                    compareAndPrintDiff(
-                            env1, fetchJson(env1URL+"/"+srcProgramDetails.get(0)),
-                            env2, fetchJson(env2URL+"/"+matchedProgram.get().get(0))
-                    );
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        ComparisonMetrics metrics = new ComparisonMetrics();
+        try (DiffReporter reporter = createReporter(env1, env2)) {
+            if(getBooleanConfig("watch.enabled")) {
+                new ProgramWatcher(env1, env1URL, env2, env2URL,
+                        getIntConfig("fetch.parallelism", 8),
+                        getIntConfig("diff.parallelism", Runtime.getRuntime().availableProcessors()),
+                        getIntConfig("watch.interval.seconds", 300) * 1000L, reporter).run();
+                return;
             }
-        });
+            new ProgramComparisonPipeline(env1, env1URL, env2, env2URL,
+                    getIntConfig("fetch.parallelism", 8),
+                    getIntConfig("diff.parallelism", Runtime.getRuntime().availableProcessors()),
+                    getBooleanConfig("compare.streaming"), reporter, metrics).run();
+        }
+        if(getBooleanConfig("metrics.summary")) {
+            metrics.print(System.err);
+        }
 
 //        String jsonOne = fetchProgramConfiguration(args[0], args[1]);
 //        String jsonTwo = fetchProgramConfiguration(args[0], args[2]);
@@ -105,103 +226,472 @@ public class CompareJsons {
 
     }
 
+    /**
+     * The environments given as arguments: the first two, followed by the other arguments that have an
+     * endpoint configured.
+     */
+    private static List<String> getEnvironments(String[] args) {
+        List<String> envs = new ArrayList<>(asList(args[0], args[1]));
+        for (int i = 2; i < args.length; i++) {
+            if(hasEndpoint(args[i])) {
+                envs.add(args[i]);
+            }
+        }
+        return envs;
+    }
+
+    /**
+     * Compares the programs of more than two environments at once, see {@link EnvironmentMatrix}.
+     */
+    private static void compareEnvironments(List<String> envs) throws IOException {
+        List<String> urls = new ArrayList<>();
+        envs.forEach(env -> urls.add(getEndpointURL(env)));
+        try (DiffReporter reporter = createReporter(envs.toArray(new String[0]))) {
+            new EnvironmentMatrix(envs, urls,
+                    getIntConfig("fetch.parallelism", 8),
+                    getIntConfig("diff.parallelism", Runtime.getRuntime().availableProcessors()),
+                    getBooleanConfig("compare.matrix")).run((MatrixDiffReporter) reporter);
+        }
+    }
+
+    /**
+     * Starts the resident comparison service, see {@link ComparisonServer}. Runs until the process is stopped,
+     * then lets the requests in progress finish.
+     */
+    private static void serve() throws IOException {
+        initializeComparison();
+        initializeFetching(false);
+        ComparisonServer server = new ComparisonServer(getIntConfig("server.port", 8765),
+                getIntConfig("server.threads", Runtime.getRuntime().availableProcessors()),
+                getIntConfig("server.queue", 64));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "server-stop"));
+        server.start();
+    }
+
+    /**
+     * Compares two directory trees of exported program configurations, see {@link DirectoryComparison}.
+     */
+    private static void compareDirectories(Path srcRoot, Path destRoot) throws IOException {
+        initializeComparison();
+        DirectoryComparison.Summary summary;
+        try (DiffReporter reporter = createReporter(getRootName(srcRoot), getRootName(destRoot))) {
+            summary = new DirectoryComparison(srcRoot, destRoot,
+                    getIntConfig("diff.parallelism", Runtime.getRuntime().availableProcessors()),
+                    getBooleanConfig("compare.streaming")).run(reporter);
+        }
+        summary.print(System.err);
+    }
+
+    private static String getRootName(Path root) {
+        Path fileName = root.toAbsolutePath().normalize().getFileName();
+        return isNull(fileName) ? root.toString() : fileName.toString();
+    }
+
     private static void compareAndPrintDiff(String env1, String jsonOne, String env2, String jsonTwo) throws IOException {
+        try (DiffReporter reporter = createReporter(env1, env2)) {
+            reporter.startProgram(null);
+            compareJsons(jsonOne, jsonTwo, reporter);
+            reporter.endProgram();
+        }
+    }
+
+    static void compareJsons(String jsonOne, String jsonTwo, DiffReporter reporter) throws IOException {
+        JsonNode srcJsonNode  = readTree(jsonOne);
+        JsonNode destJsonNode = readTree(jsonTwo);
+        compareDocuments(srcJsonNode, destJsonNode, createContext(), reporter);
+    }
 
-        JsonNode srcJsonNode  = objectMapper.readTree(jsonOne);
-        JsonNode destJsonNode = objectMapper.readTree(jsonTwo);
-        Map<String, List<String>> diffs = compareObject(srcJsonNode, destJsonNode, "", "");
-        displayDiffs(diffs, env1, env2);
+    static void compareJsons(JsonNode srcJsonNode, JsonNode destJsonNode, DiffReporter reporter) {
+        compareDocuments(srcJsonNode, destJsonNode, createContext(), reporter);
     }
 
-    private static Map<String, List<String>> compareObject(JsonNode srcJsonNode, JsonNode destJsonNode, String path, String reportKey) {
+    static void compareJsons(byte[] jsonOne, byte[] jsonTwo, DiffReporter reporter) throws IOException {
+        JsonNode srcJsonNode  = readTree(jsonOne);
+        JsonNode destJsonNode = readTree(jsonTwo);
+        compareDocuments(srcJsonNode, destJsonNode, createContext(), reporter);
+    }
 
-        if(srcJsonNode.equals(destJsonNode)) {
-            return Collections.emptyMap();
+    static void compareJsons(InputStream jsonOne, InputStream jsonTwo, DiffReporter reporter) throws IOException {
+        JsonNode srcJsonNode  = readTree(jsonOne);
+        JsonNode destJsonNode = readTree(jsonTwo);
+        compareDocuments(srcJsonNode, destJsonNode, createContext(), reporter);
+    }
+
+    /**
+     * Compares two parsed documents, on the fork/join pool when compare.parallel is set.
+     */
+    private static void compareDocuments(JsonNode srcJsonNode, JsonNode destJsonNode, ComparisonContext context,
+                                         DiffReporter reporter) {
+        List<JsonNode> documents = JsonTape.alike(asList(srcJsonNode, destJsonNode));
+        srcJsonNode = documents.get(0);
+        destJsonNode = documents.get(1);
+        if(nonNull(parallelComparison)) {
+            parallelComparison.compare(srcJsonNode, destJsonNode, comparisonPlan, context, reporter);
+        } else {
+            compareObject(srcJsonNode, destJsonNode, comparisonPlan, DiffPath.ROOT, context, reporter);
         }
+        reportTruncation(context, reporter);
+    }
 
-        Map<String, List<String>> rootProperties = new LinkedHashMap<>();
-        Map<String, List> arrayProperties = new LinkedHashMap<>();
+    private static void reportTruncation(ComparisonContext context, DiffReporter reporter) {
+        if(nonNull(context.getTruncation())) {
+            reporter.truncated(context.getTruncation());
+        }
+    }
 
-        srcJsonNode.fieldNames().forEachRemaining(fieldName -> {
-            JsonNode srcProp = srcJsonNode.get(fieldName);
-            JsonNode destProp = destJsonNode.get(fieldName);
-            String fieldPath = isEmpty(path) ? fieldName :  path + "." + fieldName;
-            String localReportKey = isEmpty(reportKey) ? fieldName :  reportKey + "." + fieldName;
-            if (isPropertyNeededForComparision(path, fieldName)) {
-                if (!srcProp.equals(destProp)) {
-                    if (isArray(srcProp, destProp)) {
-                        arrayProperties.put(fieldPath, asList(srcProp, destProp, localReportKey));
-                    } else if(isNestedStructure(srcProp) || isNestedStructure(destProp)) {
-                        rootProperties.putAll(compareObject(srcProp, destProp, fieldPath, localReportKey));
-                    } else {
-                        addDiff(localReportKey, getNodeNameSafe(srcProp), getNodeNameSafe(destProp), rootProperties);
+    /**
+     * Parses a document to compare, into a {@link JsonTape} when compare.tape is set.
+     */
+    static JsonNode readTree(byte[] json) throws IOException {
+        return tape ? JsonTape.read(json, objectMapper) : objectMapper.readTree(json);
+    }
+
+    private static JsonNode readTree(String json) throws IOException {
+        return tape ? JsonTape.read(json.getBytes(StandardCharsets.UTF_8), objectMapper) : objectMapper.readTree(json);
+    }
+
+    /**
+     * Parses a document to compare. For a tape the stream is first read into memory as a whole.
+     */
+    private static JsonNode readTree(InputStream json) throws IOException {
+        if(!tape) {
+            return objectMapper.readTree(json);
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream(Math.max(json.available(), 8192));
+        byte[] buffer = new byte[8192];
+        for (int read; (read = json.read(buffer)) >= 0; ) {
+            content.write(buffer, 0, read);
+        }
+        return readTree(content.toByteArray());
+    }
+
+    /**
+     * Same as {@link #compareJsons(byte[], byte[], DiffReporter)}, timing the parse and diff stages of the
+     * program into metrics.
+     */
+    static void compareJsons(byte[] jsonOne, byte[] jsonTwo, DiffCollector diffs, ComparisonMetrics.ProgramMetrics metrics) throws IOException {
+        ComparisonMetrics.ParseEvent parse = metrics.beginParse();
+        JsonNode srcJsonNode  = readTree(jsonOne);
+        JsonNode destJsonNode = readTree(jsonTwo);
+        metrics.endParse(parse);
+
+        ComparisonMetrics.DiffEvent diff = metrics.beginDiff();
+        ComparisonContext context = createContext();
+        compareDocuments(srcJsonNode, destJsonNode, context, diffs);
+        metrics.endDiff(diff, context, diffs);
+    }
+
+    /**
+     * Same diffs as {@link #compareJsons(String, String, DiffReporter)}, computed by streaming both documents
+     * instead of reading them into trees.
+     */
+    static void compareJsonsStreaming(InputStream jsonOne, InputStream jsonTwo, DiffReporter reporter) throws IOException {
+        compareJsonsStreaming(jsonOne, jsonTwo, createContext(), reporter);
+    }
+
+    /**
+     * Same as {@link #compareJsonsStreaming(InputStream, InputStream, DiffReporter)}, timing the diff stage of
+     * the program into metrics.
+     */
+    static void compareJsonsStreaming(InputStream jsonOne, InputStream jsonTwo, DiffCollector diffs,
+                                      ComparisonMetrics.ProgramMetrics metrics) throws IOException {
+        ComparisonMetrics.DiffEvent diff = metrics.beginDiff();
+        ComparisonContext context = createContext();
+        compareJsonsStreaming(metrics.countBytes(jsonOne, true), metrics.countBytes(jsonTwo, false), context, diffs);
+        metrics.endDiff(diff, context, diffs);
+    }
+
+    private static void compareJsonsStreaming(InputStream jsonOne, InputStream jsonTwo, ComparisonContext context,
+                                              DiffReporter reporter) throws IOException {
+        try (JsonParser srcParser = objectMapper.getFactory().createParser(jsonOne);
+             JsonParser destParser = objectMapper.getFactory().createParser(jsonTwo)) {
+            new StreamingJsonComparator(comparisonPlan, context, reporter).compare(srcParser, destParser);
+        }
+        reportTruncation(context, reporter);
+    }
+
+    /**
+     * Reporter writing the configured report.format (table, jsonl, jsonpatch or summary) to report.file, or to the
+     * standard output when no file is configured. Closing the reporter leaves the standard output open.
+     */
+    static DiffReporter createReporter(String... envs) throws IOException {
+        String format = getConfig("report.format");
+        checkReportFormat(format, envs);
+        String file = getConfig("report.file");
+        Writer out = new BufferedWriter(isEmpty(file)
+                ? new OutputStreamWriter(new FilterOutputStream(System.out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
                     }
-                }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                }, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8), 1 << 16);
+        return createReporter(format, out, envs);
+    }
+
+    /**
+     * Reporter writing the given format (table, jsonl, jsonpatch or summary, table when unknown) to out. Closing
+     * the reporter closes out.
+     */
+    static DiffReporter createReporter(String format, Writer out, String... envs) throws IOException {
+        checkReportFormat(format, envs);
+        if("jsonl".equalsIgnoreCase(format)) {
+            return new JsonLinesDiffReporter(out, objectMapper, envs);
+        } else if("jsonpatch".equalsIgnoreCase(format)) {
+            return new JsonPatchDiffReporter(out, objectMapper);
+        } else if("summary".equalsIgnoreCase(format)) {
+            return new SummaryDiffReporter(out, envs);
+        }
+        return new TableDiffReporter(out, envs);
+    }
+
+    /**
+     * Fails before anything is compared when the format cannot report more than two environments, since only
+     * the reporters implementing {@link MatrixDiffReporter} can.
+     */
+    private static void checkReportFormat(String format, String... envs) {
+        if("jsonpatch".equalsIgnoreCase(format) && envs.length > 2) {
+            throw new IllegalArgumentException("report.format=jsonpatch compares two environments only");
+        }
+    }
+
+    /**
+     * Reports the differences between two nodes. Differences of the array properties of an object are reported
+     * after all its other differences.
+     *
+     * The path is where srcJsonNode sits in the source document. Array element positions in pointers account
+     * for the elements removed before them, so that the reported paths can be applied in order as a JSON Patch.
+     *
+     * Nothing is compared once the budget of the context is exhausted. Objects at its maximum depth are
+     * reported as one diff with their sizes, and may only differ in properties that are not compared.
+     */
+    static void compareObject(JsonNode srcJsonNode, JsonNode destJsonNode, ComparisonPlan plan, DiffPath path,
+                              ComparisonContext context, DiffReporter reporter) {
+
+        if(context.isExhausted() || context.getFingerprints().areEqual(srcJsonNode, destJsonNode)) {
+            return;
+        }
+        if(context.isTooDeep(path)) {
+            addSubtreeDiff(path, srcJsonNode, destJsonNode, context, reporter);
+            return;
+        }
+        if(!plan.hasFieldsToCompare() && srcJsonNode.isObject()) {
+            warnUnconfigured(path);
+            return;
+        }
+
+        List<ArrayProperty> arrayProperties = new ArrayList<>();
+
+        srcJsonNode.fields().forEachRemaining(field -> {
+            String fieldName = field.getKey();
+            if (plan.isPropertyNeededForComparision(fieldName)) {
+                JsonNode destProp = isNull(destJsonNode) ? null : destJsonNode.get(fieldName);
+                compareProperty(field.getValue(), destProp, plan.child(fieldName), path, fieldName, arrayProperties, context, reporter);
             }
         });
 
-        arrayProperties.entrySet().stream().forEach(
-                entry -> {
-                    Map<? extends String, ? extends List<String>> diffs = compareArrays(
-                            (JsonNode)entry.getValue().get(0),
-                            (JsonNode) entry.getValue().get(1),
-                            entry.getKey(),
-                            (String) entry.getValue().get(2));
-                    if(nonNull(diffs)) {
-                        rootProperties.putAll(diffs);
-                    }
-                }
-        );
-        return rootProperties;
+        compareArrayProperties(arrayProperties, context, reporter);
     }
 
-    private static Map<? extends String,? extends List<String>> compareArrays(JsonNode srcJsonNode, JsonNode destJsonNode, String arrayName, String reportKey) {
-        String matchingPropertyName = getMatchingPropertyName(arrayName);
-        if(isEmpty(matchingPropertyName)) {
-            return Collections.emptyMap();
+    /**
+     * Warns, once per configuration path, that the objects at path are not compared since no
+     * compare.elements.names is configured for them, which is most likely a mistake in the configuration.
+     */
+    static void warnUnconfigured(DiffPath path) {
+        String configPath = path.getConfigPath();
+        if(unconfiguredPaths.add(configPath)) {
+            System.err.println("No compare.elements.names configured for " + (isEmpty(configPath) ? "the document" : configPath)
+                    + ", its properties are not compared");
         }
+    }
 
-        List<JsonNode> srcNodesList  = new ArrayList<>();
-        List<JsonNode> destNodesList = new ArrayList<>();
-        if(nonNull(srcJsonNode))
-            srcJsonNode .iterator().forEachRemaining(node -> srcNodesList.add(node));
+    /**
+     * Compares one property of an object. Scalar and nested object differences are reported right away,
+     * arrays are only collected into arrayProperties since they are compared after all other properties.
+     * The path of the property is only created once it is known to differ.
+     */
+    static void compareProperty(JsonNode srcProp, JsonNode destProp, ComparisonPlan plan, DiffPath path, String fieldName,
+                                List<ArrayProperty> arrayProperties, ComparisonContext context, DiffReporter reporter) {
+        if(context.isExhausted()) {
+            return;
+        }
+        context.nodeVisited();
+        if (!context.getFingerprints().areEqual(srcProp, destProp)) {
+            DiffPath localPath = path.field(fieldName);
+            if (isArray(srcProp, destProp)) {
+                arrayProperties.add(new ArrayProperty(srcProp, destProp, plan, localPath));
+            } else if(isObjectReplaced(srcProp, destProp)) {
+                addDiff(localPath, getValueText(srcProp), getValueText(destProp), destProp, context, reporter);
+            } else if(isNestedStructure(srcProp) || isNestedStructure(destProp)) {
+                compareObject(srcProp, destProp, plan, localPath, context, reporter);
+            } else {
+                addDiff(localPath, getNodeNameSafe(srcProp), getNodeNameSafe(destProp), destProp, context, reporter);
+            }
+        }
+    }
 
-        if(nonNull(destJsonNode))
-            destJsonNode.iterator().forEachRemaining(node -> destNodesList.add(node));
+    static void compareArrayProperties(List<ArrayProperty> arrayProperties, ComparisonContext context, DiffReporter reporter) {
+        arrayProperties.forEach(
+                arrayProperty -> compareArrays(
+                        arrayProperty.srcNode,
+                        arrayProperty.destNode,
+                        arrayProperty.plan,
+                        arrayProperty.path,
+                        context,
+                        reporter)
+        );
+    }
 
-        Map<String, List<String>> diffs = new LinkedHashMap<>();
+    /**
+     * Compares an array property, at least one side of which is an array. When the other side is not, the
+     * property is reported as a whole, since there are no elements on that side to pair. Otherwise the elements
+     * are paired by the matching property, and unmatched elements are reported as deleted or added, null ones
+     * included, so that every reported position is the one the element has once the earlier diffs are applied.
+     */
+    static void compareArrays(JsonNode srcJsonNode, JsonNode destJsonNode, ComparisonPlan arrayPlan, DiffPath path,
+                              ComparisonContext context, DiffReporter reporter) {
+        String matchingPropertyName = arrayPlan.getMatchingPropertyName();
+        if(isEmpty(matchingPropertyName) || context.isExhausted()) {
+            return;
+        }
+        if(context.isTooDeep(path)) {
+            addSubtreeDiff(path, srcJsonNode, destJsonNode, context, reporter);
+            return;
+        }
+        if(isNull(srcJsonNode) || !srcJsonNode.isArray() || isNull(destJsonNode) || !destJsonNode.isArray()) {
+            context.nodeVisited();
+            addDiff(path, getValueText(srcJsonNode), getValueText(destJsonNode), destJsonNode, context, reporter);
+            return;
+        }
+        if(OrderedArrayDiff.ORDERED_MATCHING.equals(matchingPropertyName)) {
+            compareOrderedArrays(srcJsonNode, destJsonNode, arrayPlan, path, context, reporter);
+            return;
+        }
+
+        List<JsonNode> srcNodesList  = new ArrayList<>();
+        srcJsonNode.iterator().forEachRemaining(node -> srcNodesList.add(node));
+
+        SubtreeFingerprints fingerprints = context.getFingerprints();
+        ArrayElementIndex destIndex = new ArrayElementIndex(destJsonNode, matchingPropertyName, fingerprints);
+        List<NodePair<DiffPath>> elementPairs = isNull(context.getParallel()) ? null : new ArrayList<>();
+
+        int removed = 0;
+        for (int i = 0; i < srcNodesList.size() && !context.isExhausted(); i++) {
+            JsonNode srcNode = srcNodesList.get(i);
+            context.nodeVisited();
+            JsonNode destNode = destIndex.match(srcNode);
+            if(nonNull(destNode) && fingerprints.areEqual(srcNode, destNode)) {
+                continue;
+            }
 
-        srcNodesList.forEach(srcNode -> {
-            Optional<JsonNode> opt;
             String identityFieldName=matchingPropertyName;
             JsonNode identityFieldValue = srcNode.get(matchingPropertyName);
-            if("OBJECT".equals(matchingPropertyName)) {
-                opt = destNodesList.stream().filter(destNode -> srcNode.equals(destNode)).findFirst();
+            if(ArrayElementIndex.OBJECT_MATCHING.equals(matchingPropertyName)) {
                 identityFieldValue=srcNode.get(identityFieldName=getIdentifiableFieldColumn(srcNode));
-            } else {
-                opt = destNodesList.stream().filter(destNode -> srcNode.get(matchingPropertyName).equals(destNode.get(matchingPropertyName))).findFirst();
             }
-
-            if(opt.isPresent()) {
-                Map<String, List<String>> map = compareObject(srcNode, opt.get(), arrayName, getReportKey(reportKey, identityFieldName, identityFieldValue));
-                diffs.putAll(map);
-                destNodesList.remove(opt.get());
+            DiffPath elementPath = path.element(identityFieldName, identityFieldValue, i - removed);
+            if(nonNull(elementPairs)) {
+                elementPairs.add(new NodePair<>(srcNode, destNode, elementPath));
             } else {
-                addDiff(getReportKey(reportKey, identityFieldName, identityFieldValue), String.valueOf(srcNode), null, diffs);
+                compareArrayElement(srcNode, destNode, arrayPlan, elementPath, context, reporter);
             }
+            if(isNull(destNode)) {
+                removed++;
+            }
+        }
+        if(nonNull(elementPairs)) {
+            context.getParallel().compareElements(elementPairs, arrayPlan, context, reporter);
+        }
+        context.arrayCompared(srcNodesList.size(), destIndex.size(), destIndex.getProbes());
+        destIndex.unmatched().forEach(destNode -> {
+            if(context.isExhausted()) {
+                return;
+            }
+            context.nodeVisited();
+            report(path.appended(generateKeyForArrayItem(arrayPlan.getPath(), destNode)), null, getElementText(destNode),
+                    ADDED, destNode, context, reporter);
         });
-        destNodesList.forEach(destNode -> {
-            addDiff(generateKeyForArrayItem(arrayName, destNode), null, String.valueOf(destNode), diffs);
-        });
+    }
 
-        return diffs;
+    /**
+     * Compares a source array element with its partner, or reports it as deleted when it has none. Elements that
+     * are not both objects are reported as changed as a whole, null ones included, like the deleted ones.
+     */
+    static void compareArrayElement(JsonNode srcNode, JsonNode destNode, ComparisonPlan arrayPlan, DiffPath elementPath,
+                                    ComparisonContext context, DiffReporter reporter) {
+        if(isNull(destNode)) {
+            report(elementPath, getElementText(srcNode), null, DELETED, null, context, reporter);
+        } else if(srcNode.isObject() && destNode.isObject()) {
+            compareObject(srcNode, destNode, arrayPlan, elementPath, context, reporter);
+        } else {
+            report(elementPath, getElementText(srcNode), getElementText(destNode), MODIFIED, destNode, context, reporter);
+        }
     }
 
-    private static String getReportKey(String reportKey, String identityFieldName, JsonNode identityFieldValue) {
-        return new StringBuilder().append(reportKey).append("[").append(identityFieldName).append("=").append(String.valueOf(identityFieldValue)).append("]").toString();
+    /**
+     * Compares arrays without identity position by position, aligned by {@link OrderedArrayDiff}. Within each
+     * run of elements not in common, deleted and inserted elements are paired up as changed, the rest is
+     * reported as deleted or added. Elements are reported as reportKey[index], with their index in the source
+     * array, or in the destination array for added elements.
+     *
+     * Pointers are positions in the destination array, which is where each change applies once the ones
+     * before it have been applied. Deleted, added and changed elements are therefore always reported, null and
+     * empty ones included, and a changed element is reported as modified even when it was null.
+     */
+    static void compareOrderedArrays(JsonNode srcJsonNode, JsonNode destJsonNode, ComparisonPlan arrayPlan, DiffPath path,
+                                     ComparisonContext context, DiffReporter reporter) {
+        List<JsonNode> srcNodesList  = new ArrayList<>();
+        List<JsonNode> destNodesList = new ArrayList<>();
+        if(nonNull(srcJsonNode))
+            srcJsonNode .iterator().forEachRemaining(srcNodesList::add);
+        if(nonNull(destJsonNode))
+            destJsonNode.iterator().forEachRemaining(destNodesList::add);
+
+        OrderedArrayDiff alignment = new OrderedArrayDiff(srcNodesList, destNodesList, context.getFingerprints());
+        context.arrayCompared(srcNodesList.size(), destNodesList.size(), alignment.getSteps());
+        int i = 0, j = 0;
+        while ((i < srcNodesList.size() || j < destNodesList.size()) && !context.isExhausted()) {
+            if(i < srcNodesList.size() && j < destNodesList.size() && alignment.isSrcKept(i) && alignment.isDestKept(j)) {
+                context.nodeVisited();
+                i++;
+                j++;
+                continue;
+            }
+            int deletedTo = i, insertedTo = j;
+            while (deletedTo < srcNodesList.size() && !alignment.isSrcKept(deletedTo)) {
+                deletedTo++;
+            }
+            while (insertedTo < destNodesList.size() && !alignment.isDestKept(insertedTo)) {
+                insertedTo++;
+            }
+            for (; i < deletedTo && j < insertedTo; i++, j++) {
+                JsonNode srcNode = srcNodesList.get(i), destNode = destNodesList.get(j);
+                DiffPath elementPath = path.position(i, j);
+                context.nodeVisited();
+                if(srcNode.isObject() && destNode.isObject() && arrayPlan.hasFieldsToCompare()) {
+                    compareObject(srcNode, destNode, arrayPlan, elementPath, context, reporter);
+                } else {
+                    report(elementPath, getElementText(srcNode), getElementText(destNode), MODIFIED, destNode, context, reporter);
+                }
+            }
+            for (; i < deletedTo; i++) {
+                context.nodeVisited();
+                report(path.position(i, j), getElementText(srcNodesList.get(i)), null, DELETED, null, context, reporter);
+            }
+            for (; j < insertedTo; j++) {
+                context.nodeVisited();
+                report(path.position(j, j), null, getElementText(destNodesList.get(j)), ADDED, destNodesList.get(j), context, reporter);
+            }
+        }
     }
 
-    private static void addDiff(String fieldPath, String srcValue, String destValue, Map<String, List<String>> map) {
+    private static void addDiff(DiffPath path, String srcValue, String destValue, JsonNode destNode,
+                                ComparisonContext context, DiffReporter reporter) {
         srcValue  = isNull(srcValue)  || isEmpty(srcValue)  || "null".equalsIgnoreCase(srcValue)  ? null : srcValue.trim();
         destValue = isNull(destValue) || isEmpty(destValue) || "null".equalsIgnoreCase(destValue) ? null : destValue.trim();
 
@@ -214,13 +704,40 @@ public class CompareJsons {
         } else if(nonNull(srcValue) && isNull(destValue)) {
             mode = DELETED;
         }
-        map.put(fieldPath, asList(srcValue, destValue, mode.toString()));
+        report(path, srcValue, destValue, mode, destNode, context, reporter);
+    }
+
+    /**
+     * Reports two subtrees at the maximum depth as one diff, with their sizes as values, e.g. [12 elements].
+     */
+    private static void addSubtreeDiff(DiffPath path, JsonNode srcNode, JsonNode destNode, ComparisonContext context,
+                                       DiffReporter reporter) {
+        context.depthLimited();
+        addDiff(path, getSubtreeText(srcNode), getSubtreeText(destNode), destNode, context, reporter);
+    }
+
+    /**
+     * Hands a diff to the reporter if the budget still allows one more.
+     */
+    private static void report(DiffPath path, String srcValue, String destValue, DiffModes mode, JsonNode destNode,
+                               ComparisonContext context, DiffReporter reporter) {
+        if(!context.isExhausted() && context.reserveDiff()) {
+            reporter.diff(path, srcValue, destValue, mode, destNode);
+        }
     }
 
     private static boolean isArray(JsonNode srcProp, JsonNode destProp) {
         return (nonNull(srcProp) && srcProp.isArray()) || (nonNull(destProp) && destProp.isArray());
     }
 
+    /**
+     * Whether one side is an object and the other a value that is not, which cannot be compared field by field.
+     * A missing value is not one: the fields of an object missing on the destination side are each deleted.
+     */
+    private static boolean isObjectReplaced(JsonNode srcProp, JsonNode destProp) {
+        return nonNull(srcProp) && nonNull(destProp) && srcProp.isObject() != destProp.isObject();
+    }
+
     private static String getIdentifiableFieldColumn(JsonNode node) {
         StringBuilder idField=new StringBuilder();
         Iterator<String> fieldNames = node.fieldNames();
@@ -242,7 +759,9 @@ public class CompareJsons {
         String identityFieldName=getIdentifiableFieldColumn(node);
 
         boolean nestedStructure = isNestedStructure(node);
-        String arrAttribute = "[" + identityFieldName + "=" + node.get(identityFieldName).asText() + "]";
+        JsonNode identityFieldValue = node.get(identityFieldName);
+        String arrAttribute = "[" + (isNull(identityFieldValue) ? getElementText(node)
+                : identityFieldName + "=" + identityFieldValue.asText()) + "]";
         if(tempKey.contains(".")) {
             int index = tempKey.lastIndexOf('.');
             if(nestedStructure) {
@@ -264,25 +783,27 @@ public class CompareJsons {
         return nonNull(srcNode) && (srcNode.isArray() || srcNode.size() != 0 );
     }
 
-    private static String getMatchingPropertyName(String arrayName) {
-        return configs.getString(arrayName+".matching.property");
-    }
-
     private static String getNodeNameSafe(JsonNode jsonNode) {
         return isNull(jsonNode) ? null : jsonNode.asText();
     }
 
-    private static boolean isPropertyNeededForComparision(String basePath, String fieldName) {
-        String propName = isEmpty(basePath) ? "" : basePath + ".";
-        String props = configs.getString( propName + "compare.elements.names");
-        if(isEmpty(props)) {
-            return false;
-        }
+    private static String getValueText(JsonNode jsonNode) {
+        return isNull(jsonNode) || !jsonNode.isContainerNode() ? getNodeNameSafe(jsonNode) : jsonNode.toString();
+    }
 
-        if("ALL".equalsIgnoreCase(props)) {
-            return true;
+    private static String getSubtreeText(JsonNode jsonNode) {
+        if(isNull(jsonNode) || !jsonNode.isContainerNode()) {
+            return getNodeNameSafe(jsonNode);
         }
-        return asList(props.split(",")).contains(fieldName);
+        return jsonNode.isArray() ? "[" + jsonNode.size() + " elements]" : "{" + jsonNode.size() + " properties}";
+    }
+
+    /**
+     * Text of an array element that is reported even when null or empty, which are shown as JSON.
+     */
+    private static String getElementText(JsonNode jsonNode) {
+        String text = getValueText(jsonNode);
+        return isEmpty(text) || "null".equalsIgnoreCase(text) ? jsonNode.toString() : text.trim();
     }
 
     private static String[] getArgumentsIfRequired(String[] args) {
@@ -301,7 +822,7 @@ public class CompareJsons {
 
     public static String getFileContentsAsString(String path) throws IOException {
         StringBuffer buf = new StringBuffer();
-        BufferedReader txtReader = new BufferedReader(new InputStreamReader(FileReader.class.getResourceAsStream(path)));
+        BufferedReader txtReader = new BufferedReader(new InputStreamReader(CompareJsons.class.getResourceAsStream(path)));
         for (String line; (line = txtReader.readLine()) != null; ) {
             buf.append(line + "\n");
         }
@@ -323,144 +844,29 @@ public class CompareJsons {
         }
     }
 
-    private static void displayDiffs(Map<String, List<String>> diffs, String env1, String env2) {
-        printRow("Property", env1, env2, "Diff", true);
-
-        diffs.entrySet().forEach(entry -> printRow(entry.getKey(), entry.getValue().get(0), entry.getValue().get(1), entry.getValue().get(2), false));
-
+    static List<List<String>> getPrograms(String env, String url) throws IOException {
+        return parsePrograms(fetchProgramList(env, url));
     }
 
-    private static void printRow(String property, String columnOneText, String columnTwoText, String operation, boolean isHeader) {
-        property = isNull(property) ? "" : property;
-        columnOneText = isNull(columnOneText) ? "" : columnOneText;
-        columnTwoText = isNull(columnTwoText) ? "" : columnTwoText;
-        operation = isNull(operation) ? "" : operation;
-
-        int totalWidth = 150;
-        int operationColumnWidth = 16;
-        if(isHeader) {
-            System.out.println(getFormattedString("*", totalWidth + operationColumnWidth, '*', false, "", "", 1, false).get(0));
-        }
-        int noOfRows = 1;
-        int tempNoOfRows = getNoOfRowsRequired(totalWidth/3 - 4, property.length());
-        if(tempNoOfRows > noOfRows) {
-            noOfRows = tempNoOfRows;
-        }
-
-        tempNoOfRows = getNoOfRowsRequired(totalWidth/3 - 3, columnOneText.length());
-        if(tempNoOfRows > noOfRows) {
-            noOfRows = tempNoOfRows;
-        }
-
-        tempNoOfRows = getNoOfRowsRequired(totalWidth/3 - 3, columnTwoText.length());
-        if(tempNoOfRows > noOfRows) {
-            noOfRows = tempNoOfRows;
-        }
-
-        List<String> propertyColumnList     = getFormattedString(property, totalWidth / 3 - 2,       ' ', true, "|", "|", noOfRows, isHeader ? true : false);
-        List<String> columnOneList          = getFormattedString(columnOneText, totalWidth / 3 - 1,  ' ', true, "",  "|", noOfRows, isHeader ? true : false);
-        List<String> columnTwoList          = getFormattedString(columnTwoText,  totalWidth / 3 - 1, ' ', true, "",  "|", noOfRows, isHeader ? true : false);
-        List<String> operationColumnList    = getFormattedString(operation, operationColumnWidth - 1,' ', true, "", "|", noOfRows, true);
-        for (int i =0; i < noOfRows; i++) {
-            System.out.print(propertyColumnList.get(i));
-            System.out.print(columnOneList.get(i));
-            System.out.print(columnTwoList.get(i));
-            System.out.println(operationColumnList.get(i));
-        }
-        if(isHeader) {
-            System.out.println(getFormattedString("*", totalWidth + operationColumnWidth, '*', false, "", "", 1, false).get(0));
-        } else {
-            System.out.println(getFormattedString("-", totalWidth + operationColumnWidth, '-', false, "", "", 1, false).get(0));
+    static byte[] fetchProgramList(String env, String url) throws IOException {
+        if(isNull(snapshotStore)) {
+            return fetchJson(url);
         }
+        return readSnapshot(env, "programs", url);
     }
 
-    private static List<String> getFormattedString(String srcText, int size, char defaultCharToBeFilled, boolean needSpace, String prefix, String suffix, int noOfRows, boolean isCenterAligned) {
-        List<String> tokens = new ArrayList<>();
-        StringBuilder formattedText = new StringBuilder(size);
-
-        String currentLineText = srcText;
-
-        srcText = isNull(srcText) ? "" : srcText;
-        int textLength = srcText.length();
-        if (textLength < size) {
-            boolean flag = true;
-            while (--noOfRows >= 0) {
-                formattedText.append(prefix);
-                if(flag) {
-
-                    int leftPaddingSize = (size - textLength) / 2;
-                    int rightPaddingSize = size - leftPaddingSize - textLength;
-                    if (needSpace) {
-                        leftPaddingSize--;
-                        rightPaddingSize--;
-                        currentLineText = defaultCharToBeFilled + srcText + defaultCharToBeFilled;
-                    }
-                    if(!isCenterAligned) {
-                        rightPaddingSize += leftPaddingSize;
-                        leftPaddingSize = 0;
-                    }
-                    for (int i = 0; i < leftPaddingSize; i++) {
-                        formattedText.append(defaultCharToBeFilled);
-                    }
-                    formattedText.append(isNull(srcText) ? "" : currentLineText);
-                    for (int i = 0; i < rightPaddingSize; i++) {
-                        formattedText.append(defaultCharToBeFilled);
-                    }
-                    flag = !flag;
-                } else {
-                    formattedText.append(format("%"+(size)+"s", defaultCharToBeFilled));
-                }
-                tokens.add(formattedText.append(suffix).toString());
-                formattedText.setLength(0);
-            }
-        } else {
-            while (noOfRows >= 0) {
-                if (textLength > 0) {
-                    while (textLength > 0) {
-                        if (textLength > size - 3) {
-                            currentLineText = srcText.substring(0, size - 3) + "-";
-                            srcText = srcText.substring(size - 3);
-                        } else {
-                            currentLineText = format("%-" + (size - 2) + "s", srcText);
-                            srcText = "";
-                        }
-                        formattedText.append(prefix).append(defaultCharToBeFilled).append(currentLineText).append(defaultCharToBeFilled).append(suffix);
-                        textLength = srcText.length();
-                        tokens.add(formattedText.toString());
-                        formattedText.setLength(0);
-                        noOfRows--;
-                    }
-                } else {
-                    tokens.add(format("%s%"+size+"s%s", prefix, defaultCharToBeFilled, suffix));
-                    noOfRows--;
-                }
-            }
+    static List<List<String>> getPrograms(String url) throws IOException {
+        try (InputStream jsonText = fetchJsonStream(url)) {
+            return parsePrograms(objectMapper.readTree(jsonText));
         }
-        return tokens;
     }
 
-    private static int getNoOfRowsRequired(int columnWidth, int textWidth) {
-        int noOfRows = 1;
-        int mod = 0;
-        if((mod = textWidth % columnWidth) > 0) {
-            int tempNoOfRows = textWidth / columnWidth + (mod > 0 ? 1 : 0);
-            if(tempNoOfRows > noOfRows) {
-                noOfRows = tempNoOfRows;
-            }
-        }
-        return noOfRows;
+    static List<List<String>> parsePrograms(byte[] jsonText) throws IOException {
+        return parsePrograms(objectMapper.readTree(jsonText));
     }
 
-    private static List<List<String>> getPrograms(String url) throws IOException {
+    private static List<List<String>> parsePrograms(JsonNode jsonNode) {
         List<List<String>> programList = new ArrayList<List<String>>();
-        RequestSpecification build = new RequestSpecBuilder()
-                .setRelaxedHTTPSValidation().setContentType(ContentType.JSON).setBaseUri(url)
-                .build();
-
-        String jsonText = RestAssured.given().spec(build).get().asString();
-
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode jsonNode = mapper.readTree(jsonText);
 
         for (int i=0; jsonNode.has(i); i++){
 //            System.out.println( " Program Id is "+ jsonNode.get(i).get("id")); ;
@@ -475,14 +881,65 @@ public class CompareJsons {
         return programList;
     }
 
-    private static String fetchJson(String url) {
-        RequestSpecification build = new RequestSpecBuilder()
-                .setRelaxedHTTPSValidation()
-                .setContentType(ContentType.JSON)
-                .setBaseUri(url)
-                .build();
+    static byte[] fetchJson(String env, String url, String programId) throws IOException {
+        if(isNull(snapshotStore)) {
+            return fetchJson(url + "/" + programId);
+        }
+        return readSnapshot(env, programId, url + "/" + programId);
+    }
+
+    static InputStream fetchJsonStream(String env, String url, String programId) throws IOException {
+        if(isNull(snapshotStore)) {
+            return fetchJsonStream(url + "/" + programId);
+        }
+        Path payload = getSnapshot(env, programId, url + "/" + programId);
+        try {
+            return new FilterInputStream(Files.newInputStream(payload)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        snapshotStore.release(payload);
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            snapshotStore.release(payload);
+            throw e;
+        }
+    }
+
+    private static byte[] readSnapshot(String env, String key, String url) throws IOException {
+        Path payload = getSnapshot(env, key, url);
+        try {
+            return Files.readAllBytes(payload);
+        } finally {
+            snapshotStore.release(payload);
+        }
+    }
+
+    /**
+     * Stored payload for the key: read from a dated or, in offline mode, the latest snapshot, otherwise
+     * revalidated against the environment. It stays pinned in the store until released.
+     */
+    private static Path getSnapshot(String env, String key, String url) throws IOException {
+        if(isSnapshotEnv(env)) {
+            return snapshotStore.read(env.substring(0, env.indexOf('@')), key, env.substring(env.indexOf('@') + 1));
+        }
+        return offline ? snapshotStore.read(env, key, null) : snapshotStore.fetch(env, key, url);
+    }
+
+    static byte[] fetchJson(String url) throws IOException {
+        return transport.getBytes(url);
+    }
+
+    static InputStream fetchJsonStream(String url) throws IOException {
+        return transport.open(url);
+    }
 
-        return( RestAssured.given().spec(build).get().asString()) ;
+    static HttpTransport.Response get(String url, Map<String, String> headers) throws IOException {
+        return transport.get(url, headers);
     }
 
     enum DiffModes {
@@ -490,5 +947,24 @@ public class CompareJsons {
         MODIFIED,
         DELETED
     }
+
+    /**
+     * An array property found by compareProperty, compared once the other properties of its object are.
+     */
+    static final class ArrayProperty {
+
+        final JsonNode srcNode, destNode;
+
+        final ComparisonPlan plan;
+
+        final DiffPath path;
+
+        ArrayProperty(JsonNode srcNode, JsonNode destNode, ComparisonPlan plan, DiffPath path) {
+            this.srcNode = srcNode;
+            this.destNode = destNode;
+            this.plan = plan;
+            this.path = path;
+        }
+    }
 }
 
@@ -0,0 +1,111 @@
+package com.mams.comparator.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thin command line client of the {@link ComparisonServer}, for CI jobs. It only needs the JDK, so it starts in a
+ * fraction of the time a comparison run takes to load its libraries:
+ *
+ * <pre>
+ * java -cp json-comparator.jar com.mams.comparator.json.ComparisonClient [--url http://localhost:8765] [--format table] qa qaa [program...]
+ * java -cp json-comparator.jar com.mams.comparator.json.ComparisonClient [--url ...] [--format ...] source.json target.json
+ * </pre>
+ *
+ * Two files are sent as payloads, anything else names two environments and optionally programs. The report is
+ * copied to the standard output. The exit status is 1 when the server could not be reached or answered with an
+ * error, which is printed on the standard error.
+ */
+public final class ComparisonClient {
+
+    private ComparisonClient() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String url = System.getProperty("server.url", "http://localhost:8765"), format = null;
+        List<String> operands = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if("--url".equals(args[i]) && i + 1 < args.length) {
+                url = args[++i];
+            } else if("--format".equals(args[i]) && i + 1 < args.length) {
+                format = args[++i];
+            } else {
+                operands.add(args[i]);
+            }
+        }
+        if(operands.size() < 2) {
+            System.err.println("Usage: ComparisonClient [--url <server>] [--format table|jsonl|jsonpatch|summary] "
+                    + "(<source env> <target env> [program...] | <source.json> <target.json>)");
+            System.exit(2);
+        }
+
+        Path source = Paths.get(operands.get(0)), target = Paths.get(operands.get(1));
+        boolean payloads = operands.size() == 2 && Files.isRegularFile(source) && Files.isRegularFile(target);
+        StringBuilder query = new StringBuilder();
+        if(format != null) {
+            appendParameter(query, "format", format);
+        }
+        HttpURLConnection connection;
+        try {
+            if(payloads) {
+                connection = (HttpURLConnection) new URL(url + "/compare" + query).openConnection();
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setDoOutput(true);
+                connection.setChunkedStreamingMode(1 << 16);
+                try (OutputStream body = connection.getOutputStream()) {
+                    body.write("{\"source\":".getBytes(StandardCharsets.UTF_8));
+                    Files.copy(source, body);
+                    body.write(",\"target\":".getBytes(StandardCharsets.UTF_8));
+                    Files.copy(target, body);
+                    body.write('}');
+                }
+            } else {
+                appendParameter(query, "source", operands.get(0));
+                appendParameter(query, "target", operands.get(1));
+                for (String program : operands.subList(2, operands.size())) {
+                    appendParameter(query, "program", program);
+                }
+                connection = (HttpURLConnection) new URL(url + "/compare" + query).openConnection();
+            }
+
+            int status = connection.getResponseCode();
+            if(status != 200) {
+                System.err.print("Server answered " + status + ": ");
+                copy(connection.getErrorStream(), System.err);
+                System.exit(1);
+            }
+            copy(connection.getInputStream(), System.out);
+        } catch (IOException e) {
+            System.err.println("Cannot compare through " + url + ": " + e);
+            System.exit(1);
+        }
+    }
+
+    private static void appendParameter(StringBuilder query, String name, String value) throws IOException {
+        query.append(query.length() == 0 ? '?' : '&').append(name).append('=').append(URLEncoder.encode(value, "UTF-8"));
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        if(in == null) {
+            return;
+        }
+        try (InputStream body = in) {
+            byte[] buffer = new byte[1 << 16];
+            for (int read; (read = body.read(buffer)) >= 0; ) {
+                out.write(buffer, 0, read);
+            }
+        }
+        out.flush();
+    }
+}
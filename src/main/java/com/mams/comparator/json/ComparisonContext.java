@@ -0,0 +1,260 @@
+package com.mams.comparator.json;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * State of one comparison of two documents: the fingerprints of their subtrees, the budget the comparison may
+ * spend and counters of the work done, read by {@link ComparisonMetrics} once the comparison is over.
+ *
+ * A context is used by one thread at a time. Diffs found ahead of the point they are reported at, by the tasks
+ * of a {@link ParallelComparison} or for the arrays of an object while streaming, are counted in contexts
+ * forked from the one they are replayed into, see {@link #fork(ParallelComparison, int)}, whose work is added
+ * back once they are done. Forked contexts share the limits and the deadline of the comparison, and take
+ * their diffs from the budget again, in report order, as they are replayed. The diffs kept are therefore the
+ * first ones a sequential comparison would report.
+ *
+ * A forked context also knows the contexts whose diffs are replayed before its own: the one it was forked
+ * from, up to the diffs that one has reported so far, and the contexts forked before it at the same time.
+ * Once these and its own diffs fill the budget, the next diff it finds exhausts it, so that tasks past the
+ * budget stop at their first diff instead of running to the end.
+ */
+final class ComparisonContext {
+
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+
+    private SubtreeFingerprints fingerprints;
+
+    private final ParallelComparison parallel;
+
+    private final Budget budget;
+
+    /**
+     * The context this one was forked from, and the contexts forked along with it, whose first index ones
+     * are replayed before this one.
+     */
+    private final ComparisonContext parent;
+
+    private final ComparisonContext[] siblings;
+
+    private final int index;
+
+    private long nodesVisited, arrays, arrayElements, arrayProbes;
+
+    private int largestArray;
+
+    /**
+     * Diffs reported through this context, read by the contexts replayed after it while they run.
+     */
+    private volatile int diffs;
+
+    private boolean diffLimitReached;
+
+    ComparisonContext() {
+        this(new SubtreeFingerprints(), null, null, null, null, 0);
+    }
+
+    /**
+     * A context for a comparison that stops once maxDiffs diffs have been reported or deadlineMillis have
+     * passed, and does not compare below maxDepth, see {@link #isExhausted()} and {@link #isTooDeep(DiffPath)}.
+     * Limits of 0 or less are not enforced.
+     */
+    ComparisonContext(int maxDiffs, int maxDepth, long deadlineMillis) {
+        this(new SubtreeFingerprints(), null, maxDiffs > 0 || maxDepth > 0 || deadlineMillis > 0
+                ? new Budget(maxDiffs, maxDepth, deadlineMillis) : null, null, null, 0);
+    }
+
+    private ComparisonContext(SubtreeFingerprints fingerprints, ParallelComparison parallel, Budget budget,
+                              ComparisonContext parent, ComparisonContext[] siblings, int index) {
+        this.fingerprints = fingerprints;
+        this.parallel = parallel;
+        this.budget = budget;
+        this.parent = parent;
+        this.siblings = siblings;
+        this.index = index;
+    }
+
+    /**
+     * Contexts for tasks comparing parts of the same documents, with counters of their own, whose diffs are
+     * replayed into this context in the order of the contexts. The fingerprints are shared, so they must all
+     * have been computed before the tasks run.
+     */
+    ComparisonContext[] fork(ParallelComparison parallel, int count) {
+        ComparisonContext[] forked = new ComparisonContext[count];
+        for (int i = 0; i < count; i++) {
+            forked[i] = new ComparisonContext(fingerprints, parallel, budget, this, forked, i);
+        }
+        return forked;
+    }
+
+    /**
+     * A context for diffs found on the same thread and replayed into this context later, after the diffs this
+     * context reports in the meantime.
+     */
+    ComparisonContext fork() {
+        return fork(parallel, 1)[0];
+    }
+
+    /**
+     * Adds the work counted by a forked context.
+     */
+    void add(ComparisonContext forked) {
+        nodesVisited += forked.nodesVisited;
+        arrays += forked.arrays;
+        arrayElements += forked.arrayElements;
+        arrayProbes += forked.arrayProbes;
+        largestArray = Math.max(largestArray, forked.largestArray);
+    }
+
+    /**
+     * The comparison splitting large arrays into tasks, or null when comparing sequentially.
+     */
+    ParallelComparison getParallel() {
+        return parallel;
+    }
+
+    SubtreeFingerprints getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * Drops the fingerprints computed so far, along with the nodes they hold on to. Used when streaming, where
+     * subtrees are not looked at again once compared.
+     */
+    void releaseFingerprints() {
+        fingerprints = new SubtreeFingerprints();
+    }
+
+    /**
+     * Counts a property or array element compared. Every {@value #DEADLINE_CHECK_INTERVAL} nodes the deadline
+     * is checked, if there is one.
+     */
+    void nodeVisited() {
+        if(++nodesVisited % DEADLINE_CHECK_INTERVAL == 0 && nonNull(budget) && budget.deadlineMillis > 0
+                && System.nanoTime() - budget.deadline > 0) {
+            budget.timeOut("deadline of " + budget.deadlineMillis + " ms passed");
+        }
+    }
+
+    /**
+     * Takes one of the diffs the budget allows, to be reported right after. False when none is left: the diff
+     * must be dropped, and the comparison is truncated and exhausted from then on.
+     */
+    boolean reserveDiff() {
+        if(isNull(budget) || budget.maxDiffs <= 0 || diffs + precedingDiffs() < budget.maxDiffs) {
+            diffs++;
+            return true;
+        }
+        diffLimitReached = true;
+        budget.truncate("limit of " + budget.maxDiffs + " diffs reached");
+        return false;
+    }
+
+    /**
+     * Diffs known so far to be reported before the diffs of this context, 0 unless it is forked.
+     */
+    private int precedingDiffs() {
+        if(isNull(parent)) {
+            return 0;
+        }
+        int preceding = parent.precedingDiffs() + parent.diffs;
+        for (int i = 0; i < index; i++) {
+            preceding += siblings[i].diffs;
+        }
+        return preceding;
+    }
+
+    /**
+     * Whether a diff had to be dropped or the deadline of the comparison has passed, after which nothing more is
+     * compared or reported.
+     */
+    boolean isExhausted() {
+        return nonNull(budget) && (diffLimitReached || budget.timedOut);
+    }
+
+    /**
+     * Whether the nodes at path are at the maximum depth, so that their differences are reported as a whole
+     * instead of property by property.
+     */
+    boolean isTooDeep(DiffPath path) {
+        return nonNull(budget) && budget.maxDepth > 0 && path.getDepth() >= budget.maxDepth;
+    }
+
+    /**
+     * Records that differences were reported as a whole at the maximum depth.
+     */
+    void depthLimited() {
+        budget.truncate("depth limited to " + budget.maxDepth);
+    }
+
+    /**
+     * Why the comparison did not report every difference, or null when it did.
+     */
+    String getTruncation() {
+        return isNull(budget) ? null : budget.truncation;
+    }
+
+    /**
+     * Counts an array compared, with the number of lookups or alignment steps it took to pair its elements.
+     */
+    void arrayCompared(int srcSize, int destSize, long probes) {
+        arrays++;
+        arrayElements += srcSize + destSize;
+        arrayProbes += probes;
+        largestArray = Math.max(largestArray, Math.max(srcSize, destSize));
+    }
+
+    long getNodesVisited() {
+        return nodesVisited;
+    }
+
+    long getArrays() {
+        return arrays;
+    }
+
+    long getArrayElements() {
+        return arrayElements;
+    }
+
+    long getArrayProbes() {
+        return arrayProbes;
+    }
+
+    int getLargestArray() {
+        return largestArray;
+    }
+
+    /**
+     * Limits of one comparison, shared by the contexts forked from it.
+     */
+    private static final class Budget {
+
+        private final int maxDiffs, maxDepth;
+
+        private final long deadlineMillis, deadline;
+
+        private volatile boolean timedOut;
+
+        private volatile String truncation;
+
+        private Budget(int maxDiffs, int maxDepth, long deadlineMillis) {
+            this.maxDiffs = maxDiffs;
+            this.maxDepth = maxDepth;
+            this.deadlineMillis = deadlineMillis;
+            this.deadline = deadlineMillis > 0 ? System.nanoTime() + deadlineMillis * 1_000_000 : 0;
+        }
+
+        private void timeOut(String reason) {
+            truncate(reason);
+            timedOut = true;
+        }
+
+        private synchronized void truncate(String reason) {
+            if(isNull(truncation)) {
+                truncation = reason;
+            } else if(!truncation.contains(reason)) {
+                truncation += ", " + reason;
+            }
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.mams.comparator.json;
+
+import com.mams.comparator.json.CompareJsons.DiffModes;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Timings and work counters of a comparison run, per program and in total.
+ *
+ * Every stage of a program (fetch, parse, diff, render) is recorded as a JFR event, so a flight recording of
+ * a slow run (-XX:StartFlightRecording) shows where the time went, program by program, next to the GC and I/O
+ * events. Events cost next to nothing while no recording is running. On a JVM without JFR (Java 8 before
+ * update 262) no events are recorded: the events are only defined in {@link FlightRecorderEvents}, which is
+ * loaded when jdk.jfr is there, so that this class runs on any Java 8. The same measurements are kept for
+ * {@link #print(PrintStream)}, which sums up the run with latency percentiles per stage and the programs that
+ * took longest.
+ *
+ * When streaming, documents are parsed while they are diffed: there is no parse stage, and payload sizes are
+ * counted as the comparison reads them.
+ */
+final class ComparisonMetrics {
+
+    private static final int SLOWEST = 10;
+
+    private static final EventRecorder RECORDER = createRecorder();
+
+    private final long started = System.nanoTime();
+
+    private final List<ProgramMetrics> programs = new ArrayList<>();
+
+    private final List<Long> programListFetches = new ArrayList<>();
+
+    private long programListBytes;
+
+    synchronized ProgramMetrics startProgram(String programName) {
+        ProgramMetrics program = new ProgramMetrics(programName);
+        programs.add(program);
+        return program;
+    }
+
+    FetchEvent beginProgramListFetch(String env) {
+        return begin(new FetchEvent(env), null);
+    }
+
+    synchronized void endProgramListFetch(FetchEvent event, long bytes) {
+        event.bytes = bytes;
+        programListFetches.add(end(event));
+        programListBytes += bytes;
+    }
+
+    synchronized void print(PrintStream out) {
+        long wallTime = System.nanoTime() - started;
+        List<Long> fetches = new ArrayList<>(programListFetches), parses = new ArrayList<>(),
+                diffs = new ArrayList<>(), renders = new ArrayList<>();
+        long bytes = programListBytes, nodesVisited = 0, arrays = 0, arrayElements = 0, arrayProbes = 0;
+        long[] modeCounts = new long[DiffModes.values().length];
+        int largestArray = 0, failed = 0, truncated = 0;
+        for (ProgramMetrics program : programs) {
+            addSample(fetches, program.srcFetchNanos);
+            addSample(fetches, program.destFetchNanos);
+            addSample(parses, program.parseNanos);
+            addSample(diffs, program.diffNanos);
+            addSample(renders, program.renderNanos);
+            bytes += program.srcBytes + program.destBytes;
+            nodesVisited += program.nodesVisited;
+            arrays += program.arrays;
+            arrayElements += program.arrayElements;
+            arrayProbes += program.arrayProbes;
+            largestArray = Math.max(largestArray, program.largestArray);
+            for (DiffModes mode : DiffModes.values()) {
+                modeCounts[mode.ordinal()] += program.modeCounts[mode.ordinal()];
+            }
+            if(program.failed) {
+                failed++;
+            }
+            if(program.truncated) {
+                truncated++;
+            }
+        }
+
+        out.println("\n\n\n");
+        out.println("~~~~~~~~~~~~~ Metrics ~~~~~~~~~~~~~");
+        out.println();
+        out.println(String.format("%-28s: %d", "Programs compared", programs.size() - failed));
+        out.println(String.format("%-28s: %d", "Failed", failed));
+        out.println(String.format("%-28s: %d", "Truncated", truncated));
+        out.println(String.format("%-28s: %.1f s", "Wall time", wallTime / 1e9));
+        out.println(String.format("%-28s: %d", "Bytes fetched", bytes));
+        out.println(String.format("%-28s: %d", "Nodes visited", nodesVisited));
+        out.println(String.format("%-28s: %d (elements %d, largest %d, probes %d)", "Arrays compared",
+                arrays, arrayElements, largestArray, arrayProbes));
+        out.println(String.format("%-28s: %d (ADDED %d, MODIFIED %d, DELETED %d)", "Differences",
+                modeCounts[DiffModes.ADDED.ordinal()] + modeCounts[DiffModes.MODIFIED.ordinal()] + modeCounts[DiffModes.DELETED.ordinal()],
+                modeCounts[DiffModes.ADDED.ordinal()], modeCounts[DiffModes.MODIFIED.ordinal()], modeCounts[DiffModes.DELETED.ordinal()]));
+
+        out.println();
+        out.println(String.format("%-10s %8s %10s %10s %10s %10s %12s", "Stage (ms)", "count", "p50", "p90", "p99", "max", "total"));
+        printStage(out, "fetch", fetches);
+        printStage(out, "parse", parses);
+        printStage(out, "diff", diffs);
+        printStage(out, "render", renders);
+
+        if(!programs.isEmpty()) {
+            out.println();
+            out.println("Slowest programs (ms):");
+            programs.stream()
+                    .sorted(Comparator.comparingLong(ProgramMetrics::totalNanos).reversed())
+                    .limit(SLOWEST)
+                    .forEach(program -> out.println(String.format(
+                            "%10.1f  %s (fetch %.1f, parse %.1f, diff %.1f, render %.1f, %d nodes, %d array probes, %d diffs)",
+                            millis(program.totalNanos()), program.programName,
+                            millis(program.srcFetchNanos) + millis(program.destFetchNanos), millis(program.parseNanos),
+                            millis(program.diffNanos), millis(program.renderNanos),
+                            program.nodesVisited, program.arrayProbes, program.diffCount())));
+        }
+        out.flush();
+    }
+
+    private static void addSample(List<Long> samples, long nanos) {
+        if(nanos >= 0) {
+            samples.add(nanos);
+        }
+    }
+
+    private static void printStage(PrintStream out, String stage, List<Long> samples) {
+        if(samples.isEmpty()) {
+            out.println(String.format("%-10s %8d %10s %10s %10s %10s %12s", stage, 0, "-", "-", "-", "-", "-"));
+            return;
+        }
+        Collections.sort(samples);
+        long total = 0;
+        for (long sample : samples) {
+            total += sample;
+        }
+        out.println(String.format("%-10s %8d %10.1f %10.1f %10.1f %10.1f %12.1f", stage, samples.size(),
+                millis(percentile(samples, 50)), millis(percentile(samples, 90)), millis(percentile(samples, 99)),
+                millis(samples.get(samples.size() - 1)), millis(total)));
+    }
+
+    /**
+     * Nearest-rank percentile of sorted samples.
+     */
+    private static long percentile(List<Long> sorted, int percent) {
+        return sorted.get(Math.max(0, (int) Math.ceil(percent / 100.0 * sorted.size()) - 1));
+    }
+
+    private static double millis(long nanos) {
+        return Math.max(0, nanos) / 1e6;
+    }
+
+    private static <E extends StageEvent> E begin(E event, String programName) {
+        event.program = programName;
+        event.started = System.nanoTime();
+        event.recorded = RECORDER.begin(event);
+        return event;
+    }
+
+    /**
+     * Ends the stage and records its event, returning how long the stage took.
+     */
+    private static long end(StageEvent event) {
+        long nanos = System.nanoTime() - event.started;
+        RECORDER.end(event, event.recorded);
+        return nanos;
+    }
+
+    private static EventRecorder createRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (EventRecorder) Class.forName("com.mams.comparator.json.FlightRecorderEvents")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new EventRecorder() {
+                @Override
+                public Object begin(StageEvent stage) {
+                    return null;
+                }
+
+                @Override
+                public void end(StageEvent stage, Object event) {
+                }
+            };
+        }
+    }
+
+    /**
+     * Measurements of one program. Each stage is written by the thread running it and only read once the
+     * program has been reported.
+     */
+    static final class ProgramMetrics {
+
+        private final String programName;
+
+        private long srcFetchNanos = -1, destFetchNanos = -1, parseNanos = -1, diffNanos = -1, renderNanos = -1;
+
+        private long srcBytes, destBytes, nodesVisited, arrays, arrayElements, arrayProbes;
+
+        private int largestArray;
+
+        private final int[] modeCounts = new int[DiffModes.values().length];
+
+        private boolean failed, truncated;
+
+        private ProgramMetrics(String programName) {
+            this.programName = programName;
+        }
+
+        FetchEvent beginFetch(String env) {
+            return begin(new FetchEvent(env), programName);
+        }
+
+        /**
+         * Ends the fetch of the source or destination payload, bytes is -1 when the payload is streamed.
+         */
+        void endFetch(FetchEvent event, boolean source, long bytes) {
+            event.bytes = bytes;
+            long nanos = end(event);
+            if(source) {
+                srcFetchNanos = nanos;
+                srcBytes += Math.max(0, bytes);
+            } else {
+                destFetchNanos = nanos;
+                destBytes += Math.max(0, bytes);
+            }
+        }
+
+        /**
+         * Counts the bytes of a streamed payload as they are read.
+         */
+        InputStream countBytes(InputStream in, boolean source) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int read = super.read();
+                    if(read >= 0) {
+                        counted(1);
+                    }
+                    return read;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if(read > 0) {
+                        counted(read);
+                    }
+                    return read;
+                }
+
+                private void counted(int bytes) {
+                    if(source) {
+                        srcBytes += bytes;
+                    } else {
+                        destBytes += bytes;
+                    }
+                }
+            };
+        }
+
+        ParseEvent beginParse() {
+            return begin(new ParseEvent(), programName);
+        }
+
+        void endParse(ParseEvent event) {
+            parseNanos = end(event);
+        }
+
+        DiffEvent beginDiff() {
+            return begin(new DiffEvent(), programName);
+        }
+
+        void endDiff(DiffEvent event, ComparisonContext context, DiffCollector diffs) {
+            event.nodesVisited = nodesVisited = context.getNodesVisited();
+            event.arrays = arrays = context.getArrays();
+            event.arrayElements = arrayElements = context.getArrayElements();
+            event.largestArray = largestArray = context.getLargestArray();
+            event.arrayProbes = arrayProbes = context.getArrayProbes();
+            event.added = modeCounts[DiffModes.ADDED.ordinal()] = diffs.count(DiffModes.ADDED);
+            event.modified = modeCounts[DiffModes.MODIFIED.ordinal()] = diffs.count(DiffModes.MODIFIED);
+            event.deleted = modeCounts[DiffModes.DELETED.ordinal()] = diffs.count(DiffModes.DELETED);
+            event.truncated = truncated = nonNull(context.getTruncation());
+            diffNanos = end(event);
+        }
+
+        RenderEvent beginRender() {
+            return begin(new RenderEvent(), programName);
+        }
+
+        void endRender(RenderEvent event) {
+            event.diffs = diffCount();
+            renderNanos = end(event);
+        }
+
+        void failed() {
+            failed = true;
+        }
+
+        private int diffCount() {
+            int count = 0;
+            for (int modeCount : modeCounts) {
+                count += modeCount;
+            }
+            return count;
+        }
+
+        private long totalNanos() {
+            return Math.max(0, srcFetchNanos) + Math.max(0, destFetchNanos) + Math.max(0, parseNanos)
+                    + Math.max(0, diffNanos) + Math.max(0, renderNanos);
+        }
+    }
+
+    /**
+     * Records stages as events of the flight recorder of the JVM.
+     */
+    interface EventRecorder {
+
+        /**
+         * Starts the event of a stage, returning what {@link #end(StageEvent, Object)} needs to commit it.
+         */
+        Object begin(StageEvent stage);
+
+        void end(StageEvent stage, Object event);
+    }
+
+    abstract static class StageEvent {
+
+        String program;
+
+        long started;
+
+        Object recorded;
+    }
+
+    static final class FetchEvent extends StageEvent {
+
+        final String environment;
+
+        /**
+         * Size of the payload, -1 when it is streamed into the comparison.
+         */
+        long bytes;
+
+        private FetchEvent(String environment) {
+            this.environment = environment;
+        }
+    }
+
+    static final class ParseEvent extends StageEvent {
+    }
+
+    static final class DiffEvent extends StageEvent {
+
+        long nodesVisited, arrays, arrayElements, arrayProbes;
+
+        int largestArray, added, modified, deleted;
+
+        boolean truncated;
+    }
+
+    static final class RenderEvent extends StageEvent {
+
+        int diffs;
+    }
+}
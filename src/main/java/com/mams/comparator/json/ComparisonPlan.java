@@ -0,0 +1,172 @@
+package com.mams.comparator.json;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+
+/**
+ * The comparison rules of config.properties, compiled once into an immutable trie with one node per configured
+ * path ("activities", "activities.criteria", ...).
+ *
+ * Each node knows which of its fields are compared ({@code <path>.compare.elements.names}, where ALL compares
+ * every field) and, for arrays, the property used to pair their elements ({@code <path>.matching.property}).
+ * Arrays without a matching property are skipped, unless a default one is given for them (ORDERED, which
+ * compares them position by position).
+ *
+ * ALL compares everything below the node as well: the paths under it without names of their own compare every
+ * field, and arrays under it without a matching property follow the same default as elsewhere. Differences
+ * inside nested objects are not dropped for want of configuration.
+ *
+ * Comparators walk the trie alongside the documents, so no keys are built or looked up while comparing.
+ */
+final class ComparisonPlan {
+
+    private static final String COMPARE_ELEMENTS_NAMES = "compare.elements.names";
+
+    private static final String MATCHING_PROPERTY = "matching.property";
+
+    /**
+     * Plan of every path without configuration: nothing is compared below it, which the comparators warn about
+     * once per path, see {@link CompareJsons#warnUnconfigured(DiffPath)}.
+     */
+    static final ComparisonPlan EMPTY = new ComparisonPlan("", null);
+
+    private final String path;
+
+    /**
+     * Plan of the paths without configuration, which also gives this node its default matching property.
+     */
+    private final ComparisonPlan unconfigured;
+
+    /**
+     * Plan of the fields of this node that have no configuration, unconfigured unless it compares ALL.
+     */
+    private ComparisonPlan unconfiguredFields;
+
+    private final Map<String, ComparisonPlan> children = new HashMap<>();
+
+    private Set<String> fieldsToCompare = Collections.emptySet();
+
+    private boolean compareAllFields;
+
+    private String matchingPropertyName;
+
+    private boolean fieldsConfigured;
+
+    private ComparisonPlan(String path, ComparisonPlan unconfigured) {
+        this.path = path;
+        this.unconfigured = unconfigured == null ? this : unconfigured;
+        this.unconfiguredFields = this.unconfigured;
+    }
+
+    static ComparisonPlan compile(ResourceBundle configs) {
+        return compile(configs, null);
+    }
+
+    /**
+     * Compiles the configuration, using defaultMatchingPropertyName for the arrays that have no matching
+     * property of their own (null to skip them).
+     */
+    static ComparisonPlan compile(ResourceBundle configs, String defaultMatchingPropertyName) {
+        ComparisonPlan unconfigured = EMPTY;
+        if(!isEmpty(defaultMatchingPropertyName)) {
+            unconfigured = new ComparisonPlan("", null);
+            unconfigured.setMatchingPropertyName(defaultMatchingPropertyName);
+        }
+        ComparisonPlan root = new ComparisonPlan("", unconfigured);
+        Enumeration<String> keys = configs.getKeys();
+        while (keys.hasMoreElements()) {
+            String key = keys.nextElement();
+            if(key.equals(COMPARE_ELEMENTS_NAMES) || key.endsWith("." + COMPARE_ELEMENTS_NAMES)) {
+                root.node(pathOf(key, COMPARE_ELEMENTS_NAMES)).setFieldsToCompare(configs.getString(key));
+            } else if(key.equals(MATCHING_PROPERTY) || key.endsWith("." + MATCHING_PROPERTY)) {
+                root.node(pathOf(key, MATCHING_PROPERTY)).setMatchingPropertyName(configs.getString(key));
+            }
+        }
+        ComparisonPlan everything = new ComparisonPlan("", unconfigured);
+        everything.compareAllFields = true;
+        everything.unconfiguredFields = everything;
+        root.compareAllBelow(everything, false);
+        return root;
+    }
+
+    /**
+     * Makes the nodes below a node comparing ALL compare every field unless configured otherwise, and their
+     * unconfigured fields compare everything.
+     */
+    private void compareAllBelow(ComparisonPlan everything, boolean underAll) {
+        if(underAll && !fieldsConfigured) {
+            compareAllFields = true;
+        }
+        if(compareAllFields) {
+            unconfiguredFields = everything;
+        }
+        children.values().forEach(child -> child.compareAllBelow(everything, compareAllFields));
+    }
+
+    /**
+     * Dotted path of this node, as used in the configuration keys.
+     */
+    String getPath() {
+        return path;
+    }
+
+    boolean isPropertyNeededForComparision(String fieldName) {
+        return compareAllFields || fieldsToCompare.contains(fieldName);
+    }
+
+    /**
+     * Plan for the values of the given field. When nothing is configured below it, a plan comparing no fields,
+     * or every field under ALL.
+     */
+    ComparisonPlan child(String fieldName) {
+        ComparisonPlan child = children.get(fieldName);
+        return child == null ? unconfiguredFields : child;
+    }
+
+    /**
+     * Property pairing the elements of the array at this path, null when the array is not compared.
+     */
+    String getMatchingPropertyName() {
+        return matchingPropertyName == null ? unconfigured.matchingPropertyName : matchingPropertyName;
+    }
+
+    boolean hasFieldsToCompare() {
+        return compareAllFields || !fieldsToCompare.isEmpty();
+    }
+
+    private ComparisonPlan node(String path) {
+        ComparisonPlan node = this;
+        if(!isEmpty(path)) {
+            for (String segment : path.split("\\.")) {
+                String childPath = isEmpty(node.path) ? segment : node.path + "." + segment;
+                node = node.children.computeIfAbsent(segment, name -> new ComparisonPlan(childPath, unconfigured));
+            }
+        }
+        return node;
+    }
+
+    private void setFieldsToCompare(String props) {
+        if(isEmpty(props)) {
+            return;
+        }
+        fieldsConfigured = true;
+        compareAllFields = "ALL".equalsIgnoreCase(props);
+        fieldsToCompare = new HashSet<>(asList(props.split(",")));
+    }
+
+    private void setMatchingPropertyName(String matchingPropertyName) {
+        this.matchingPropertyName = isEmpty(matchingPropertyName) ? null : matchingPropertyName;
+    }
+
+    private static String pathOf(String key, String suffix) {
+        return key.length() == suffix.length() ? "" : key.substring(0, key.length() - suffix.length() - 1);
+    }
+}
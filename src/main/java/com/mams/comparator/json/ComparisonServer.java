@@ -0,0 +1,301 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Resident comparison service, started with {@code CompareJsons --serve}, so that short CI runs pay neither JVM
+ * startup nor warmup: the configuration, ObjectMapper and comparison plan are set up once, and the comparison
+ * code stays compiled from one request to the next. It listens on the loopback interface only:
+ *
+ * - POST /compare with {"source": {...}, "target": {...}} compares two payloads
+ * - GET /compare?source=qa&amp;target=qaa compares the programs of two environments, only the ones named by
+ *   program=... parameters when there are any
+ * - GET /health answers ok
+ *
+ * Diffs are written in the format given by the format parameter: jsonl (the default), table, jsonpatch or
+ * summary.
+ * Payloads are compared before the response starts, so a bad payload gets a 400. Environments are reported
+ * program by program as they are compared, like a command line run.
+ *
+ * At most {@code threads} requests are handled at once and up to {@code queue} more wait for a thread. Beyond
+ * that a request is answered 503 with a Retry-After header right away, so that /health keeps answering while
+ * the server is busy. An error after the diffs have started streaming cannot change the status any more: the
+ * response then ends with an error line, {"error": ...} in jsonl. Each request is logged on the standard error
+ * with its latency.
+ */
+final class ComparisonServer {
+
+    private static final String JSONL = "jsonl";
+
+    private static final String RETRY_AFTER_SECONDS = "5";
+
+    private static final long STOP_GRACE_SECONDS = 30;
+
+    private static final String NEW_LINE = "\n";
+
+    private final HttpServer server;
+
+    private final ThreadPoolExecutor executor;
+
+    ComparisonServer(int port, int threads, int queue) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), queue);
+        executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queue)), ProgramComparisonPipeline.namedDaemonThreads("request"));
+        server.createContext("/compare", this::admit);
+        server.createContext("/health", exchange -> {
+            respond(exchange, 200, "ok");
+            exchange.close();
+        });
+    }
+
+    void start() {
+        server.start();
+        System.err.println("Listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    /**
+     * Lets the requests already admitted finish, for up to STOP_GRACE_SECONDS, while new ones are answered 503.
+     */
+    void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(STOP_GRACE_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Runs on the dispatcher thread of the HttpServer, so it only hands the request over to the executor, or
+     * turns it away when the executor is full or stopping.
+     */
+    private void admit(HttpExchange exchange) {
+        long started = System.nanoTime();
+        try {
+            executor.execute(() -> handle(exchange, started));
+        } catch (RejectedExecutionException e) {
+            try {
+                exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+                respond(exchange, 503, "Too many comparisons in progress, retry later");
+            } catch (IOException ignored) {
+                // the client is gone
+            } finally {
+                exchange.close();
+                log(exchange, started);
+            }
+        }
+    }
+
+    private void handle(HttpExchange exchange, long started) {
+        Response response = null;
+        try {
+            Map<String, List<String>> parameters = getParameters(exchange);
+            response = new Response(exchange, getParameter(parameters, "format", JSONL));
+            if("POST".equals(exchange.getRequestMethod())) {
+                comparePayloads(exchange, parameters, response);
+            } else if("GET".equals(exchange.getRequestMethod())) {
+                compareEnvironments(parameters, response);
+            } else {
+                respond(exchange, 405, "Use POST to compare payloads or GET to compare environments");
+            }
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            respondWithError(exchange, response, 400, e);
+        } catch (IOException | UncheckedIOException e) {
+            respondWithError(exchange, response, 502, e);
+        } catch (RuntimeException e) {
+            respondWithError(exchange, response, 500, e);
+        } finally {
+            exchange.close();
+            log(exchange, started);
+        }
+    }
+
+    private static void log(HttpExchange exchange, long started) {
+        System.err.println(String.format("%s %s %d %.1f ms", exchange.getRequestMethod(), exchange.getRequestURI(),
+                exchange.getResponseCode(), (System.nanoTime() - started) / 1e6));
+    }
+
+    private static void comparePayloads(HttpExchange exchange, Map<String, List<String>> parameters, Response response) throws IOException {
+        JsonNode request;
+        try (InputStream body = exchange.getRequestBody()) {
+            request = CompareJsons.getObjectMapper().readTree(body);
+        }
+        JsonNode source = isNull(request) ? null : request.get("source");
+        JsonNode target = isNull(request) ? null : request.get("target");
+        if(isNull(source) || isNull(target) || !source.isObject()) {
+            throw new IllegalArgumentException("Expected {\"source\": {...}, \"target\": {...}}");
+        }
+
+        DiffCollector diffs = new DiffCollector();
+        CompareJsons.compareJsons(source, target, diffs);
+
+        DiffReporter reporter = response.createReporter("source", "target");
+        reporter.startProgram(getParameter(parameters, "program", null));
+        diffs.replayTo(reporter);
+        reporter.endProgram();
+        reporter.close();
+    }
+
+    private static void compareEnvironments(Map<String, List<String>> parameters, Response response) throws IOException {
+        String source = getParameter(parameters, "source", null), target = getParameter(parameters, "target", null);
+        if(isNull(source) || isNull(target)) {
+            throw new IllegalArgumentException("Expected source and target environments");
+        }
+        String sourceURL = CompareJsons.getRequestedEndpointURL(source);
+        String targetURL = CompareJsons.getRequestedEndpointURL(target);
+
+        DiffReporter reporter = response.createReporter(source, target);
+        new ProgramComparisonPipeline(source, sourceURL, target, targetURL,
+                CompareJsons.getIntConfig("fetch.parallelism", 8),
+                CompareJsons.getIntConfig("diff.parallelism", Runtime.getRuntime().availableProcessors()),
+                CompareJsons.getBooleanConfig("compare.streaming"), reporter, new ComparisonMetrics())
+                .run(parameters.get("program"));
+        reporter.close();
+    }
+
+    private static void respondWithError(HttpExchange exchange, Response response, int status, Exception e) {
+        try {
+            if(exchange.getResponseCode() == -1) {
+                respond(exchange, status, String.valueOf(e.getMessage()));
+            } else if(nonNull(response)) {
+                response.fail(e);
+            }
+        } catch (IOException ignored) {
+            // the client is gone
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static Map<String, List<String>> getParameters(HttpExchange exchange) throws IOException {
+        Map<String, List<String>> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if(isNull(query)) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = URLDecoder.decode(separator < 0 ? parameter : parameter.substring(0, separator), "UTF-8");
+            String value = separator < 0 ? "" : URLDecoder.decode(parameter.substring(separator + 1), "UTF-8");
+            parameters.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        }
+        return parameters;
+    }
+
+    private static String getParameter(Map<String, List<String>> parameters, String name, String defaultValue) {
+        List<String> values = parameters.get(name);
+        return isNull(values) ? defaultValue : values.get(0);
+    }
+
+    /**
+     * Body of a response, written by a reporter. The response starts with the first bytes written or when the
+     * reporter is closed, so that a request failing before that still gets an error status.
+     */
+    private static final class Response {
+
+        private final HttpExchange exchange;
+
+        private final String format;
+
+        private Writer out;
+
+        Response(HttpExchange exchange, String format) {
+            this.exchange = exchange;
+            this.format = format;
+        }
+
+        DiffReporter createReporter(String... envs) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", JSONL.equalsIgnoreCase(format) ? "application/x-ndjson"
+                    : "jsonpatch".equalsIgnoreCase(format) ? "application/json" : "text/plain; charset=utf-8");
+            OutputStream body = new OutputStream() {
+
+                private OutputStream started;
+
+                @Override
+                public void write(int b) throws IOException {
+                    start().write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    start().write(b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if(nonNull(started)) {
+                        started.flush();
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    start().close();
+                }
+
+                private OutputStream start() throws IOException {
+                    if(isNull(started)) {
+                        exchange.sendResponseHeaders(200, 0);
+                        started = exchange.getResponseBody();
+                    }
+                    return started;
+                }
+            };
+            out = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), 1 << 16);
+            return CompareJsons.createReporter(format, out, envs);
+        }
+
+        /**
+         * Ends a response that has already started with an error line. Reporters flush at the end of each
+         * program, so the line follows the last program reported.
+         */
+        void fail(Exception e) throws IOException {
+            if(isNull(out)) {
+                return;
+            }
+            out.write(JSONL.equalsIgnoreCase(format)
+                    ? CompareJsons.getObjectMapper().writeValueAsString(Collections.singletonMap("error", String.valueOf(e)))
+                    : "Comparison failed: " + e);
+            out.write(NEW_LINE);
+            out.flush();
+        }
+    }
+}
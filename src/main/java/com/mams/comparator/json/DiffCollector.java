@@ -0,0 +1,132 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mams.comparator.json.CompareJsons.DiffModes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Keeps the diffs of one program in memory, in the order they were reported, until they can be replayed to
+ * the actual reporter. Used where diffs are produced ahead of the point they must be written at: on the diff
+ * pool of the pipeline, and for the array differences of an object while streaming.
+ */
+final class DiffCollector implements DiffReporter {
+
+    private final List<DiffEntry> diffs = new ArrayList<>();
+
+    private String truncation;
+
+    @Override
+    public void startProgram(String programName) {
+    }
+
+    @Override
+    public void diff(DiffPath path, String srcValue, String destValue, DiffModes mode, JsonNode destNode) {
+        diffs.add(new DiffEntry(path, srcValue, destValue, mode, destNode));
+    }
+
+    @Override
+    public void truncated(String reason) {
+        truncation = reason;
+    }
+
+    @Override
+    public void endProgram() {
+    }
+
+    @Override
+    public void programFailed(String programName, Throwable cause) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Why the diffs are only part of them, or null when they are all there.
+     */
+    String getTruncation() {
+        return truncation;
+    }
+
+    int size() {
+        return diffs.size();
+    }
+
+    int count(DiffModes mode) {
+        int count = 0;
+        for (DiffEntry diff : diffs) {
+            if(diff.getMode() == mode) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Fingerprints of the diffs, sorted, see {@link DiffEntry#fingerprint}.
+     */
+    long[] fingerprints() {
+        long[] fingerprints = new long[diffs.size()];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = diffs.get(i).fingerprint();
+        }
+        Arrays.sort(fingerprints);
+        return fingerprints;
+    }
+
+    /**
+     * Diffs of this collector whose fingerprint is not among the sorted fingerprints of other diffs. They are
+     * only part of them when this collector is, or when the other diffs were (otherTruncation not null).
+     */
+    DiffCollector minus(long[] fingerprints, String otherTruncation) {
+        DiffCollector remaining = new DiffCollector();
+        remaining.truncation = nonNull(truncation) ? truncation : otherTruncation;
+        diffs.stream().filter(diff -> Arrays.binarySearch(fingerprints, diff.fingerprint()) < 0).forEach(remaining.diffs::add);
+        return remaining;
+    }
+
+    /**
+     * The same diffs without their destination nodes, to be kept once the documents are gone.
+     */
+    DiffCollector withoutDestNodes() {
+        DiffCollector copy = new DiffCollector();
+        copy.truncation = truncation;
+        diffs.forEach(diff -> copy.diffs.add(diff.withoutDestNode()));
+        return copy;
+    }
+
+    void forEach(Consumer<DiffEntry> action) {
+        diffs.forEach(action);
+    }
+
+    void replayTo(DiffReporter reporter) {
+        diffs.forEach(diff -> diff.replayTo(reporter));
+        if(nonNull(truncation)) {
+            reporter.truncated(truncation);
+        }
+    }
+
+    /**
+     * Replays the diffs counted in a forked context into the context it was forked from, as far as its budget
+     * allows. Each diff takes one of the budget on the way, in the order it is reported.
+     */
+    void replayTo(DiffReporter reporter, ComparisonContext context) {
+        for (DiffEntry diff : diffs) {
+            if(context.isExhausted() || !context.reserveDiff()) {
+                return;
+            }
+            diff.replayTo(reporter);
+        }
+    }
+
+    void clear() {
+        diffs.clear();
+        truncation = null;
+    }
+}
@@ -0,0 +1,94 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mams.comparator.json.CompareJsons.DiffModes;
+
+import java.util.Objects;
+
+import static java.util.Objects.isNull;
+
+/**
+ * One diff held in memory: where it is, both values and what kind of difference it is.
+ *
+ * Entries are equal when they have the same key, values and mode. Pointers are left out since they shift
+ * with the array elements removed before them.
+ *
+ * Entries are kept after the documents are compared, so the node is copied when it is a view of a tape.
+ */
+final class DiffEntry {
+
+    private final DiffPath path;
+
+    private final String srcValue, destValue;
+
+    private final DiffModes mode;
+
+    private final JsonNode destNode;
+
+    DiffEntry(DiffPath path, String srcValue, String destValue, DiffModes mode, JsonNode destNode) {
+        this.path = path;
+        this.srcValue = srcValue;
+        this.destValue = destValue;
+        this.mode = mode;
+        this.destNode = TapeNode.detach(destNode);
+    }
+
+    DiffPath getPath() {
+        return path;
+    }
+
+    String getSrcValue() {
+        return srcValue;
+    }
+
+    String getDestValue() {
+        return destValue;
+    }
+
+    DiffModes getMode() {
+        return mode;
+    }
+
+    JsonNode getDestNode() {
+        return destNode;
+    }
+
+    /**
+     * 64-bit hash of what tells entries apart in {@link #equals}, for sets of diffs kept as fingerprints only.
+     */
+    long fingerprint() {
+        long hash = SubtreeFingerprints.mix(path.getKey().hashCode());
+        hash = SubtreeFingerprints.mix(hash ^ Objects.hashCode(srcValue)) * 31 + (isNull(srcValue) ? 1 : 0);
+        hash = SubtreeFingerprints.mix(hash ^ Objects.hashCode(destValue)) * 31 + (isNull(destValue) ? 1 : 0);
+        return SubtreeFingerprints.mix(hash ^ mode.ordinal());
+    }
+
+    /**
+     * The same diff without its destination node, to be kept once the documents are gone.
+     */
+    DiffEntry withoutDestNode() {
+        return isNull(destNode) ? this : new DiffEntry(path, srcValue, destValue, mode, null);
+    }
+
+    void replayTo(DiffReporter reporter) {
+        reporter.diff(path, srcValue, destValue, mode, destNode);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof DiffEntry)) {
+            return false;
+        }
+        DiffEntry entry = (DiffEntry) o;
+        return mode == entry.mode && path.getKey().equals(entry.path.getKey())
+                && Objects.equals(srcValue, entry.srcValue) && Objects.equals(destValue, entry.destValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path.getKey(), srcValue, destValue, mode);
+    }
+}
@@ -0,0 +1,185 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Location of a diff: the report key shown in reports (activities[name="Activity 1"].frequency) together with
+ * the RFC 6901 pointer of the property in the source document (/activities/0/frequency).
+ *
+ * Paths are built one segment at a time while the documents are walked, every segment pointing to its parent,
+ * so diffs share their common prefix and nothing is concatenated for properties that turn out to be equal.
+ * Field names come from the parser, which interns them. Keys and pointers are only rendered when a reporter
+ * asks for them.
+ */
+final class DiffPath {
+
+    private static final byte ROOT_SEGMENT = 0, FIELD = 1, KEYED_ELEMENT = 2, POSITION = 3, APPENDED_ELEMENT = 4;
+
+    static final DiffPath ROOT = new DiffPath(null, ROOT_SEGMENT, null, null, -1, -1);
+
+    private final DiffPath parent;
+
+    private final byte kind;
+
+    /**
+     * Field name, identity field name of a keyed element, or the whole key of an appended element.
+     */
+    private final String name;
+
+    private final JsonNode identity;
+
+    private final int keyIndex, pointerIndex, depth;
+
+    private DiffPath(DiffPath parent, byte kind, String name, JsonNode identity, int keyIndex, int pointerIndex) {
+        this.parent = parent;
+        this.depth = isNull(parent) ? 0 : parent.depth + 1;
+        this.kind = kind;
+        this.name = name;
+        this.identity = identity;
+        this.keyIndex = keyIndex;
+        this.pointerIndex = pointerIndex;
+    }
+
+    /**
+     * A field of the object at this path: key.fieldName and pointer/fieldName.
+     */
+    DiffPath field(String fieldName) {
+        return new DiffPath(this, FIELD, fieldName, null, -1, -1);
+    }
+
+    /**
+     * An element of the array at this path paired by a property: key[identityFieldName=identityFieldValue] and
+     * pointer/position.
+     */
+    DiffPath element(String identityFieldName, JsonNode identityFieldValue, int position) {
+        return new DiffPath(this, KEYED_ELEMENT, identityFieldName, TapeNode.detach(identityFieldValue), -1, position);
+    }
+
+    /**
+     * An element of the array at this path compared by position: key[keyIndex] and pointer/pointerIndex.
+     */
+    DiffPath position(int keyIndex, int pointerIndex) {
+        return new DiffPath(this, POSITION, null, null, keyIndex, pointerIndex);
+    }
+
+    /**
+     * An element appended to the array at this path, reported under the given key with pointer/-.
+     */
+    DiffPath appended(String key) {
+        return new DiffPath(this, APPENDED_ELEMENT, key, null, -1, -1);
+    }
+
+    /**
+     * Number of fields and array elements from the root down to this path, 0 for the root.
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Name of the top-level field this path is under, e.g. activities for activities[name="Activity 1"].frequency.
+     * Empty for the root.
+     */
+    String getTopLevelName() {
+        DiffPath path = this;
+        while (path.depth > 1) {
+            path = path.parent;
+        }
+        return path.kind == FIELD ? path.name : "";
+    }
+
+    /**
+     * Dotted path of the fields down to this path, without array elements, as used in the configuration keys
+     * (activities.criteria for activities[name="Activity 1"].criteria). Empty for the root.
+     */
+    String getConfigPath() {
+        StringBuilder configPath = new StringBuilder();
+        appendConfigPath(configPath);
+        return configPath.toString();
+    }
+
+    String getKey() {
+        StringBuilder key = new StringBuilder();
+        appendKey(key);
+        return key.toString();
+    }
+
+    String getPointer() {
+        StringBuilder pointer = new StringBuilder();
+        appendPointer(pointer);
+        return pointer.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getKey();
+    }
+
+    private void appendKey(StringBuilder key) {
+        switch (kind) {
+            case FIELD:
+                parent.appendKey(key);
+                if(key.length() > 0) {
+                    key.append('.');
+                }
+                key.append(name);
+                break;
+            case KEYED_ELEMENT:
+                parent.appendKey(key);
+                key.append('[').append(name).append('=').append(String.valueOf(identity)).append(']');
+                break;
+            case POSITION:
+                parent.appendKey(key);
+                key.append('[').append(keyIndex).append(']');
+                break;
+            case APPENDED_ELEMENT:
+                key.append(name);
+                break;
+            default:
+        }
+    }
+
+    private void appendConfigPath(StringBuilder configPath) {
+        if(kind == ROOT_SEGMENT) {
+            return;
+        }
+        parent.appendConfigPath(configPath);
+        if(kind == FIELD) {
+            if(configPath.length() > 0) {
+                configPath.append('.');
+            }
+            configPath.append(name);
+        }
+    }
+
+    private void appendPointer(StringBuilder pointer) {
+        switch (kind) {
+            case FIELD:
+                parent.appendPointer(pointer);
+                pointer.append('/');
+                for (int i = 0; i < name.length(); i++) {
+                    char c = name.charAt(i);
+                    if(c == '~') {
+                        pointer.append("~0");
+                    } else if(c == '/') {
+                        pointer.append("~1");
+                    } else {
+                        pointer.append(c);
+                    }
+                }
+                break;
+            case KEYED_ELEMENT:
+            case POSITION:
+                parent.appendPointer(pointer);
+                pointer.append('/').append(pointerIndex);
+                break;
+            case APPENDED_ELEMENT:
+                parent.appendPointer(pointer);
+                pointer.append("/-");
+                break;
+            default:
+        }
+    }
+}
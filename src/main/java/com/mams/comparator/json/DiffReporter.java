@@ -0,0 +1,50 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mams.comparator.json.CompareJsons.DiffModes;
+
+import java.io.Closeable;
+
+/**
+ * Output stage of a comparison run. Diffs are handed over one at a time while the programs are compared, so
+ * implementations can write them out as they are produced.
+ *
+ * Write failures are thrown as {@link java.io.UncheckedIOException}, since diffs are reported from deep
+ * inside the comparison.
+ */
+interface DiffReporter extends Closeable {
+
+    /**
+     * Starts the report of a program, programName is null when comparing two standalone documents.
+     */
+    void startProgram(String programName);
+
+    /**
+     * Reports one difference.
+     *
+     * @param path       location of the property, rendered as a report key, e.g.
+     *                   activities[name="Activity 1"].frequency, and as the RFC 6901 pointer of the property in
+     *                   the first document ("/-" for array elements added)
+     * @param srcValue   value in the first environment, null when absent
+     * @param destValue  value in the second environment, null when absent
+     * @param mode       kind of difference
+     * @param destNode   node of the property in the second document, null when absent
+     */
+    void diff(DiffPath path, String srcValue, String destValue, DiffModes mode, JsonNode destNode);
+
+    /**
+     * Reports that the comparison of the program stopped early or did not go down to every property, see
+     * {@link ComparisonContext}: the diffs reported before are only part of them. Called at most once per
+     * program, before endProgram.
+     *
+     * @param reason  limits that were hit, e.g. "limit of 1000 diffs reached"
+     */
+    void truncated(String reason);
+
+    void endProgram();
+
+    /**
+     * Reports a program that could not be fetched or compared, instead of startProgram/endProgram.
+     */
+    void programFailed(String programName, Throwable cause);
+}
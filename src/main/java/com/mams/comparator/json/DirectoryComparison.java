@@ -0,0 +1,199 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.mams.comparator.json.CompareJsons.DiffModes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
+/**
+ * Compares two directory trees of program configurations offline, e.g. the nightly exports of two
+ * environments laid out as program-configurations/&lt;env&gt;/&lt;program&gt;.json. Files are paired by their
+ * path relative to the root of their tree.
+ *
+ * Files are memory mapped and parsed straight from the mapping. Pairs are diffed on a pool of
+ * {@code parallelism} threads, each taking the next pair as soon as it is done with one, however unevenly the
+ * file sizes are spread. Reports are written in path order as in {@link ProgramComparisonPipeline}: at most
+ * {@code window} pairs are diffed ahead of the one being written, so only their diffs are held at a time. The
+ * run is summed up in a {@link Summary}.
+ */
+final class DirectoryComparison {
+
+    private final Path srcRoot, destRoot;
+
+    private final int parallelism, window;
+
+    private final boolean streaming;
+
+    DirectoryComparison(Path srcRoot, Path destRoot, int parallelism, boolean streaming) {
+        this.srcRoot = srcRoot;
+        this.destRoot = destRoot;
+        this.parallelism = Math.max(1, parallelism);
+        this.window = this.parallelism * 2;
+        this.streaming = streaming;
+    }
+
+    Summary run(DiffReporter reporter) throws IOException {
+        Summary summary = new Summary(srcRoot, destRoot);
+
+        Set<String> destFiles = new HashSet<>(listJsonFiles(destRoot));
+        List<String> pairs = new ArrayList<>();
+        listJsonFiles(srcRoot).forEach(relativePath -> {
+            if(destFiles.remove(relativePath)) {
+                pairs.add(relativePath);
+            } else {
+                summary.onlyInSource.add(relativePath);
+            }
+        });
+        summary.onlyInTarget.addAll(destFiles.stream().sorted().collect(Collectors.toList()));
+
+        ExecutorService diffPool = Executors.newFixedThreadPool(parallelism, ProgramComparisonPipeline.namedDaemonThreads("diff"));
+        try {
+            ProgramComparisonPipeline.runInOrder(pairs.size(), window,
+                    submitted -> supplyAsync(() -> compare(pairs.get(submitted)), diffPool),
+                    (result, emitted) -> emit(pairs.get(emitted), result, reporter, summary));
+        } finally {
+            diffPool.shutdownNow();
+        }
+        return summary;
+    }
+
+    private static void emit(String relativePath, CompletableFuture<DiffCollector> result, DiffReporter reporter,
+                             Summary summary) {
+        DiffCollector diffs;
+        try {
+            diffs = result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            reporter.programFailed(relativePath, cause);
+            summary.failed.add(relativePath);
+            return;
+        }
+        reporter.startProgram(relativePath);
+        diffs.replayTo(reporter);
+        reporter.endProgram();
+        summary.add(relativePath, diffs);
+    }
+
+    /**
+     * Paths of the .json files under root, relative to it with '/' separators, in lexicographic order.
+     */
+    private static List<String> listJsonFiles(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files
+                    .filter(file -> Files.isRegularFile(file) && file.getFileName().toString().endsWith(".json"))
+                    .map(file -> root.relativize(file).toString().replace(File.separatorChar, '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private DiffCollector compare(String relativePath) {
+        DiffCollector diffs = new DiffCollector();
+        try (FileChannel srcChannel = FileChannel.open(srcRoot.resolve(relativePath), READ);
+             FileChannel destChannel = FileChannel.open(destRoot.resolve(relativePath), READ)) {
+            InputStream jsonOne = new ByteBufferBackedInputStream(srcChannel.map(READ_ONLY, 0, srcChannel.size()));
+            InputStream jsonTwo = new ByteBufferBackedInputStream(destChannel.map(READ_ONLY, 0, destChannel.size()));
+            if(streaming) {
+                CompareJsons.compareJsonsStreaming(jsonOne, jsonTwo, diffs);
+            } else {
+                CompareJsons.compareJsons(jsonOne, jsonTwo, diffs);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return diffs;
+    }
+
+    /**
+     * Totals of a directory comparison.
+     */
+    static final class Summary {
+
+        private static final int MOST_DIFFERENT = 10;
+
+        private final Path srcRoot, destRoot;
+
+        private final List<String> onlyInSource = new ArrayList<>(), onlyInTarget = new ArrayList<>(), failed = new ArrayList<>();
+
+        private final Map<String, Integer> diffCounts = new LinkedHashMap<>();
+
+        private final long[] modeCounts = new long[DiffModes.values().length];
+
+        private int compared;
+
+        private Summary(Path srcRoot, Path destRoot) {
+            this.srcRoot = srcRoot;
+            this.destRoot = destRoot;
+        }
+
+        private void add(String relativePath, DiffCollector diffs) {
+            compared++;
+            if(diffs.size() > 0) {
+                diffCounts.put(relativePath, diffs.size());
+            }
+            for (DiffModes mode : DiffModes.values()) {
+                modeCounts[mode.ordinal()] += diffs.count(mode);
+            }
+        }
+
+        void print(PrintStream out) {
+            out.println("\n\n\n");
+            out.println("~~~~~~~~~~~~~ Summary: " + srcRoot + " vs " + destRoot + " ~~~~~~~~~~~~~");
+            out.println();
+            out.println(String.format("%-28s: %d", "Files compared", compared));
+            out.println(String.format("%-28s: %d", "Identical", compared - diffCounts.size()));
+            out.println(String.format("%-28s: %d", "With differences", diffCounts.size()));
+            out.println(String.format("%-28s: %d", "Failed", failed.size()));
+            out.println(String.format("%-28s: %d", "Only in " + srcRoot.getFileName(), onlyInSource.size()));
+            out.println(String.format("%-28s: %d", "Only in " + destRoot.getFileName(), onlyInTarget.size()));
+            out.println(String.format("%-28s: %d (ADDED %d, MODIFIED %d, DELETED %d)", "Differences",
+                    modeCounts[DiffModes.ADDED.ordinal()] + modeCounts[DiffModes.MODIFIED.ordinal()] + modeCounts[DiffModes.DELETED.ordinal()],
+                    modeCounts[DiffModes.ADDED.ordinal()], modeCounts[DiffModes.MODIFIED.ordinal()], modeCounts[DiffModes.DELETED.ordinal()]));
+
+            if(!diffCounts.isEmpty()) {
+                out.println();
+                out.println("Most differences:");
+                diffCounts.entrySet().stream()
+                        .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                        .limit(MOST_DIFFERENT)
+                        .forEach(entry -> out.println(String.format("%8d  %s", entry.getValue(), entry.getKey())));
+            }
+            printList(out, "Only in " + srcRoot + ":", onlyInSource);
+            printList(out, "Only in " + destRoot + ":", onlyInTarget);
+            printList(out, "Failed:", failed);
+            out.flush();
+        }
+
+        private static void printList(PrintStream out, String title, List<String> relativePaths) {
+            if(relativePaths.isEmpty()) {
+                return;
+            }
+            out.println();
+            out.println(title);
+            relativePaths.forEach(relativePath -> out.println("          " + relativePath));
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mams.comparator.json.CompareJsons.DiffModes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
+/**
+ * Compares the programs of more than two environments at once, e.g. qa, qaa, pre and prod, instead of running
+ * the pairwise comparison for every pair of them.
+ *
+ * The program list and the payload of every program are fetched and parsed once per environment. All
+ * documents of a program share one {@link ComparisonContext}, so each subtree is fingerprinted once however
+ * many comparisons it takes part in, and subtrees that did not change are skipped by all of them.
+ * Environments holding identical documents are compared once for all of them.
+ *
+ * The first environment is the baseline and is compared with every other one, so the work grows linearly
+ * with the number of environments. With matrix set every other pair of environments is compared as well,
+ * which also finds properties that differ between targets while missing from the baseline.
+ *
+ * The differences of a program are reported as one row per property with its value in every environment.
+ * An environment a row was not reported for holds the baseline value, see {@link Row#fillUnreported}. Programs are taken from the baseline
+ * and skipped when no other environment has them; the properties of a program missing from some of the other
+ * environments are reported as deleted there.
+ */
+final class EnvironmentMatrix {
+
+    static final String MIXED = "MIXED";
+
+    private final List<String> envs, urls;
+
+    private final int fetchParallelism, diffParallelism, window;
+
+    private final boolean matrix;
+
+    EnvironmentMatrix(List<String> envs, List<String> urls, int fetchParallelism, int diffParallelism, boolean matrix) {
+        this.envs = envs;
+        this.urls = urls;
+        this.fetchParallelism = Math.max(1, fetchParallelism);
+        this.diffParallelism = Math.max(1, diffParallelism);
+        this.window = Math.max(this.fetchParallelism, this.diffParallelism) * 2;
+        this.matrix = matrix;
+    }
+
+    void run(MatrixDiffReporter reporter) throws IOException {
+        ExecutorService fetchPool = Executors.newFixedThreadPool(fetchParallelism, ProgramComparisonPipeline.namedDaemonThreads("fetch"));
+        ExecutorService diffPool = Executors.newFixedThreadPool(diffParallelism, ProgramComparisonPipeline.namedDaemonThreads("diff"));
+        try {
+            List<CompletableFuture<List<List<String>>>> programLists = new ArrayList<>();
+            for (int i = 0; i < envs.size(); i++) {
+                String env = envs.get(i), url = urls.get(i);
+                programLists.add(supplyAsync(() -> ProgramComparisonPipeline.getPrograms(env, url), fetchPool));
+            }
+            List<List<List<String>>> programs = joinByName(programLists);
+
+            List<CompletableFuture<ProgramRows>> inFlight = new ArrayList<>(programs.size());
+            int submitted = 0;
+            for (int emitted = 0; emitted < programs.size(); emitted++) {
+                while (submitted < programs.size() && submitted < emitted + window) {
+                    inFlight.add(submit(programs.get(submitted++), fetchPool, diffPool));
+                }
+                emit(programs.get(emitted).get(0).get(1), inFlight.get(emitted), reporter);
+                inFlight.set(emitted, null);
+            }
+        } finally {
+            fetchPool.shutdownNow();
+            diffPool.shutdownNow();
+        }
+    }
+
+    /**
+     * The program details of every environment for each program of the baseline, null for the environments
+     * without it, paired by case-insensitive name as in {@link ProgramComparisonPipeline#joinByName}.
+     */
+    private static List<List<List<String>>> joinByName(List<CompletableFuture<List<List<String>>>> programLists) throws IOException {
+        List<Map<String, List<String>>> byName = new ArrayList<>();
+        for (int i = 1; i < programLists.size(); i++) {
+            Map<String, List<String>> programsByName = new HashMap<>();
+            ProgramComparisonPipeline.join(programLists.get(i))
+                    .forEach(programDetails -> programsByName.putIfAbsent(ProgramComparisonPipeline.nameKey(programDetails), programDetails));
+            byName.add(programsByName);
+        }
+
+        List<List<List<String>>> programs = new ArrayList<>();
+        for (List<String> baselineProgramDetails : ProgramComparisonPipeline.join(programLists.get(0))) {
+            List<List<String>> programDetails = new ArrayList<>();
+            programDetails.add(baselineProgramDetails);
+            boolean elsewhere = false;
+            for (Map<String, List<String>> programsByName : byName) {
+                List<String> matchedProgram = programsByName.get(ProgramComparisonPipeline.nameKey(baselineProgramDetails));
+                programDetails.add(matchedProgram);
+                elsewhere |= matchedProgram != null;
+            }
+            if(elsewhere) {
+                programs.add(programDetails);
+            }
+        }
+        return programs;
+    }
+
+    private CompletableFuture<ProgramRows> submit(List<List<String>> programDetails, ExecutorService fetchPool, ExecutorService diffPool) {
+        List<CompletableFuture<JsonNode>> documents = new ArrayList<>();
+        for (int i = 0; i < envs.size(); i++) {
+            if(isNull(programDetails.get(i))) {
+                documents.add(completedFuture(null));
+                continue;
+            }
+            String env = envs.get(i), url = urls.get(i), programId = programDetails.get(i).get(0);
+            documents.add(supplyAsync(() -> ProgramComparisonPipeline.fetchJson(env, url, programId), fetchPool)
+                    .thenApplyAsync(EnvironmentMatrix::readTree, diffPool));
+        }
+        return CompletableFuture.allOf(documents.toArray(new CompletableFuture<?>[0]))
+                .thenApplyAsync(ignored -> {
+                    List<JsonNode> parsed = new ArrayList<>();
+                    documents.forEach(document -> parsed.add(document.join()));
+                    return compare(JsonTape.alike(parsed));
+                }, diffPool);
+    }
+
+    private static JsonNode readTree(byte[] json) {
+        try {
+            return CompareJsons.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compares the documents of one program, the baseline first, and merges the differences into rows. All
+     * comparisons of the program draw on one budget.
+     */
+    ProgramRows compare(List<JsonNode> documents) {
+        ComparisonContext context = CompareJsons.createContext();
+        int[] canonical = new int[documents.size()];
+        for (int i = 0; i < documents.size(); i++) {
+            canonical[i] = i;
+            for (int j = 0; j < i; j++) {
+                if(canonical[j] == j && context.getFingerprints().areEqual(documents.get(j), documents.get(i))) {
+                    canonical[i] = j;
+                    break;
+                }
+            }
+        }
+
+        Map<String, Row> rows = new LinkedHashMap<>();
+        Map<Long, DiffCollector> compared = new HashMap<>();
+        for (int i = 0; i < documents.size(); i++) {
+            for (int j = i + 1; j < documents.size(); j++) {
+                if(i > 0 && !matrix) {
+                    break;
+                }
+                int src = canonical[i], dest = canonical[j];
+                if(src == dest || isNull(documents.get(src))) {
+                    continue;
+                }
+                DiffCollector diffs = compared.computeIfAbsent((long) src << 32 | dest, pair -> {
+                    DiffCollector collector = new DiffCollector();
+                    CompareJsons.compareObject(documents.get(src), documents.get(dest), CompareJsons.getComparisonPlan(),
+                            DiffPath.ROOT, context, collector);
+                    return collector;
+                });
+                merge(rows, i, j, diffs, documents.size());
+            }
+        }
+
+        List<Row> merged = new ArrayList<>(rows.values());
+        merged.forEach(Row::fillUnreported);
+        return new ProgramRows(merged, context.getTruncation());
+    }
+
+    /**
+     * Adds the differences between environments i and j to the rows. Diffs are matched to rows by report key;
+     * a key reported more than once in a comparison gets a row per occurrence.
+     */
+    private static void merge(Map<String, Row> rows, int i, int j, DiffCollector diffs, int environments) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        diffs.forEach(diff -> {
+            String key = diff.getPath().getKey();
+            int occurrence = occurrences.merge(key, 1, Integer::sum);
+            Row row = rows.computeIfAbsent(occurrence == 1 ? key : key + '\n' + occurrence,
+                    rowKey -> new Row(diff.getPath(), environments));
+            row.add(i, diff.getSrcValue(), j, diff.getDestValue(), diff.getMode());
+        });
+    }
+
+    private void emit(String programName, CompletableFuture<ProgramRows> result, MatrixDiffReporter reporter) {
+        ProgramRows programRows;
+        try {
+            programRows = result.join();
+        } catch (CompletionException e) {
+            reporter.programFailed(programName, e.getCause());
+            return;
+        }
+        reporter.startProgram(programName);
+        programRows.rows.forEach(row -> reporter.diff(row.path, row.values, row.diff));
+        if(nonNull(programRows.truncation)) {
+            reporter.truncated(programRows.truncation);
+        }
+        reporter.endProgram();
+    }
+
+    /**
+     * The rows of a program, and why they are only part of them when the budget of its comparisons ran out.
+     */
+    static final class ProgramRows {
+
+        private final List<Row> rows;
+
+        private final String truncation;
+
+        private ProgramRows(List<Row> rows, String truncation) {
+            this.rows = rows;
+            this.truncation = truncation;
+        }
+    }
+
+    /**
+     * One property of a program across all environments.
+     */
+    static final class Row {
+
+        private final DiffPath path;
+
+        private final String[] values;
+
+        private final boolean[] reported;
+
+        private String diff;
+
+        private Row(DiffPath path, int environments) {
+            this.path = path;
+            this.values = new String[environments];
+            this.reported = new boolean[environments];
+        }
+
+        private void add(int src, String srcValue, int dest, String destValue, DiffModes mode) {
+            values[src] = srcValue;
+            values[dest] = destValue;
+            reported[src] = true;
+            reported[dest] = true;
+            diff = isNull(diff) || diff.equals(mode.name()) ? mode.name() : MIXED;
+        }
+
+        /**
+         * Fills in the values of the environments no difference was reported for. They are those of the
+         * baseline, unless the row only comes from comparisons between other environments, which happens when
+         * the baseline does not have the property: properties only in the destination of a comparison are not
+         * reported. An environment without a difference then holds the value of the environments before it,
+         * since having the property where an earlier one does not would not have been reported either way,
+         * while missing it where an earlier one has it would. It is absent when none of them has it.
+         */
+        private void fillUnreported() {
+            for (int i = 1; i < values.length; i++) {
+                if(reported[i]) {
+                    continue;
+                }
+                if(reported[0]) {
+                    values[i] = values[0];
+                    continue;
+                }
+                for (int earlier = 1; earlier < i && isNull(values[i]); earlier++) {
+                    if(reported[earlier]) {
+                        values[i] = values[earlier];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.mams.comparator.json;
+
+import com.mams.comparator.json.ComparisonMetrics.DiffEvent;
+import com.mams.comparator.json.ComparisonMetrics.FetchEvent;
+import com.mams.comparator.json.ComparisonMetrics.RenderEvent;
+import com.mams.comparator.json.ComparisonMetrics.StageEvent;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The stages measured by {@link ComparisonMetrics} as JFR events. jdk.jfr is not part of every Java 8 runtime,
+ * so nothing refers to this class directly: ComparisonMetrics loads it by name once it has found jdk.jfr, and
+ * records no events otherwise.
+ *
+ * The fields of an event are only filled in when a recording is going to commit it.
+ */
+final class FlightRecorderEvents implements ComparisonMetrics.EventRecorder {
+
+    @Override
+    public Object begin(StageEvent stage) {
+        Stage event = stage instanceof FetchEvent ? new Fetch()
+                : stage instanceof DiffEvent ? new Diff()
+                : stage instanceof RenderEvent ? new Render()
+                : new Parse();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void end(StageEvent stage, Object recorded) {
+        Stage event = (Stage) recorded;
+        event.end();
+        if(!event.shouldCommit()) {
+            return;
+        }
+        event.program = stage.program;
+        if(event instanceof Fetch) {
+            FetchEvent fetch = (FetchEvent) stage;
+            ((Fetch) event).environment = fetch.environment;
+            ((Fetch) event).bytes = fetch.bytes;
+        } else if(event instanceof Diff) {
+            DiffEvent source = (DiffEvent) stage;
+            Diff diff = (Diff) event;
+            diff.nodesVisited = source.nodesVisited;
+            diff.arrays = source.arrays;
+            diff.arrayElements = source.arrayElements;
+            diff.largestArray = source.largestArray;
+            diff.arrayProbes = source.arrayProbes;
+            diff.added = source.added;
+            diff.modified = source.modified;
+            diff.deleted = source.deleted;
+            diff.truncated = source.truncated;
+        } else if(event instanceof Render) {
+            ((Render) event).diffs = ((RenderEvent) stage).diffs;
+        }
+        event.commit();
+    }
+
+    @Category("JSON Comparator")
+    abstract static class Stage extends Event {
+
+        @Label("Program")
+        String program;
+    }
+
+    @Name("com.mams.comparator.Fetch")
+    @Label("Fetch")
+    @Description("Payload fetched from an environment, or read from its snapshot")
+    static final class Fetch extends Stage {
+
+        @Label("Environment")
+        String environment;
+
+        @Label("Bytes")
+        @Description("Size of the payload, -1 when it is streamed into the comparison")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.mams.comparator.Parse")
+    @Label("Parse")
+    @Description("Both payloads of a program read into trees")
+    static final class Parse extends Stage {
+    }
+
+    @Name("com.mams.comparator.Diff")
+    @Label("Diff")
+    @Description("Diffs of a program computed")
+    static final class Diff extends Stage {
+
+        @Label("Nodes Visited")
+        long nodesVisited;
+
+        @Label("Arrays")
+        long arrays;
+
+        @Label("Array Elements")
+        long arrayElements;
+
+        @Label("Largest Array")
+        int largestArray;
+
+        @Label("Array Probes")
+        @Description("Index lookups and candidates looked at, or alignment steps, to pair array elements")
+        long arrayProbes;
+
+        @Label("Added")
+        int added;
+
+        @Label("Modified")
+        int modified;
+
+        @Label("Deleted")
+        int deleted;
+
+        @Label("Truncated")
+        @Description("Whether the comparison budget ran out or limited the depth compared")
+        boolean truncated;
+    }
+
+    @Name("com.mams.comparator.Render")
+    @Label("Render")
+    @Description("Diffs of a program written to the report")
+    static final class Render extends Stage {
+
+        @Label("Diffs")
+        int diffs;
+    }
+}
@@ -0,0 +1,222 @@
+package com.mams.comparator.json;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPInputStream;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * HTTP GETs against the environments, on plain {@link HttpURLConnection}s.
+ *
+ * Connections are kept alive and reused per host by the JDK's keep-alive cache, up to http.maxConnections
+ * idle connections per host, once a response body has been read to the end and closed. Responses are requested
+ * gzip compressed and inflated as they are read. Bodies are handed out as streams, so a payload goes straight
+ * from the socket into the JSON parser, or is read into bytes once.
+ *
+ * Connection failures, timeouts and 429 or 5xx responses are retried with exponential backoff and jitter, as
+ * long as no body has been handed out. HTTPS certificates and host names are not verified, as the test
+ * environments use self-signed certificates, unless relaxedHttps is off.
+ */
+final class HttpTransport {
+
+    private final int connectTimeoutMillis, readTimeoutMillis, retries;
+
+    private final long backoffMillis;
+
+    private final SSLSocketFactory relaxedSocketFactory;
+
+    HttpTransport(int connectTimeoutMillis, int readTimeoutMillis, int retries, long backoffMillis, boolean relaxedHttps) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.retries = Math.max(0, retries);
+        this.backoffMillis = Math.max(0, backoffMillis);
+        this.relaxedSocketFactory = relaxedHttps ? trustAllSocketFactory() : null;
+    }
+
+    /**
+     * Body of a 200 response, read to the end.
+     */
+    byte[] getBytes(String url) throws IOException {
+        try (Response response = get(url, Collections.emptyMap())) {
+            if(response.getStatusCode() != 200) {
+                throw new IOException("GET " + url + " returned " + response.getStatusLine());
+            }
+            return response.asByteArray();
+        }
+    }
+
+    /**
+     * Body of a 200 response as a stream, to be closed by the caller.
+     */
+    InputStream open(String url) throws IOException {
+        Response response = get(url, Collections.emptyMap());
+        if(response.getStatusCode() != 200) {
+            response.close();
+            throw new IOException("GET " + url + " returned " + response.getStatusLine());
+        }
+        return response.getBody();
+    }
+
+    /**
+     * Response to a GET with the given headers, whatever its status. Only 429 and 5xx responses are retried.
+     */
+    Response get(String url, Map<String, String> headers) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            HttpURLConnection connection = null;
+            try {
+                connection = connect(url, headers);
+                Response response = new Response(connection);
+                if(attempt < retries && isRetryable(response.getStatusCode())) {
+                    response.close();
+                    backOff(attempt);
+                    continue;
+                }
+                return response;
+            } catch (IOException e) {
+                if(nonNull(connection)) {
+                    connection.disconnect();
+                }
+                if(attempt >= retries) {
+                    throw e;
+                }
+                backOff(attempt);
+            }
+        }
+    }
+
+    private HttpURLConnection connect(String url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if(nonNull(relaxedSocketFactory) && connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(relaxedSocketFactory);
+            ((HttpsURLConnection) connection).setHostnameVerifier((hostName, session) -> true);
+        }
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        headers.forEach(connection::setRequestProperty);
+        return connection;
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    private void backOff(int attempt) throws IOException {
+        long delay = backoffMillis << Math.min(attempt, 16);
+        try {
+            Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while backing off", e);
+        }
+    }
+
+    private static SSLSocketFactory trustAllSocketFactory() {
+        TrustManager trustAll = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[]{trustAll}, null);
+            return context.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Status, headers and body of a response. Closing it reads nothing more and hands the connection back for
+     * reuse when the body was read to the end.
+     */
+    static final class Response implements Closeable {
+
+        private final HttpURLConnection connection;
+
+        private final int statusCode;
+
+        private final String statusLine;
+
+        private InputStream body;
+
+        private Response(HttpURLConnection connection) throws IOException {
+            this.connection = connection;
+            this.statusCode = connection.getResponseCode();
+            String message = connection.getResponseMessage();
+            this.statusLine = isNull(message) ? String.valueOf(statusCode) : statusCode + " " + message;
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+
+        String getStatusLine() {
+            return statusLine;
+        }
+
+        String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        /**
+         * The body, inflated when it came gzip compressed. Empty for responses without a body.
+         */
+        InputStream getBody() throws IOException {
+            if(isNull(body)) {
+                InputStream raw = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                if(isNull(raw)) {
+                    raw = new ByteArrayInputStream(new byte[0]);
+                }
+                body = "gzip".equalsIgnoreCase(connection.getContentEncoding()) ? new GZIPInputStream(raw, 1 << 13) : raw;
+            }
+            return body;
+        }
+
+        byte[] asByteArray() throws IOException {
+            int length = connection.getContentLength();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(length > 0 && isNull(connection.getContentEncoding()) ? length : 1 << 13);
+            byte[] buffer = new byte[1 << 13];
+            InputStream in = getBody();
+            for (int read; (read = in.read(buffer)) >= 0; ) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(statusCode == 304 || statusCode == 204) {
+                return;
+            }
+            getBody().close();
+        }
+    }
+}
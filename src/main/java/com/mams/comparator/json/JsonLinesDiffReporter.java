@@ -0,0 +1,127 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mams.comparator.json.CompareJsons.DiffModes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes one JSON object per diff and per line, for tools that post-process the report:
+ * <pre>
+ * {"program":"Know Your Numbers","property":"activities[name=\"Activity 1\"].frequency","path":"/activities/0/frequency","diff":"MODIFIED","source":"ANY","target":"ONCE"}
+ * </pre>
+ * When comparing more than two environments, the values are written per environment instead of source and
+ * target: {"program":...,"property":...,"path":...,"diff":...,"values":{"qa":...,"pre":...}}.
+ * Programs that failed are reported as {"program":...,"error":...}, and programs whose diffs were cut short
+ * by the comparison budget end with {"program":...,"truncated":"limit of 1000 diffs reached"}.
+ */
+final class JsonLinesDiffReporter implements MatrixDiffReporter {
+
+    private static final String NEW_LINE = "\n";
+
+    private final JsonGenerator generator;
+
+    private final String[] envs;
+
+    private String programName;
+
+    JsonLinesDiffReporter(Writer out, ObjectMapper objectMapper, String... envs) throws IOException {
+        this.generator = objectMapper.getFactory().createGenerator(out);
+        this.generator.setRootValueSeparator(null);
+        this.envs = envs;
+    }
+
+    @Override
+    public void startProgram(String programName) {
+        this.programName = programName;
+    }
+
+    @Override
+    public void diff(DiffPath path, String srcValue, String destValue, DiffModes mode, JsonNode destNode) {
+        try {
+            generator.writeStartObject();
+            if(programName != null) {
+                generator.writeStringField("program", programName);
+            }
+            generator.writeStringField("property", path.getKey());
+            generator.writeStringField("path", path.getPointer());
+            generator.writeStringField("diff", mode.name());
+            generator.writeStringField("source", srcValue);
+            generator.writeStringField("target", destValue);
+            generator.writeEndObject();
+            generator.writeRaw(NEW_LINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void diff(DiffPath path, String[] values, String diff) {
+        try {
+            generator.writeStartObject();
+            if(programName != null) {
+                generator.writeStringField("program", programName);
+            }
+            generator.writeStringField("property", path.getKey());
+            generator.writeStringField("path", path.getPointer());
+            generator.writeStringField("diff", diff);
+            generator.writeObjectFieldStart("values");
+            for (int i = 0; i < values.length; i++) {
+                generator.writeStringField(envs[i], values[i]);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeRaw(NEW_LINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void truncated(String reason) {
+        try {
+            generator.writeStartObject();
+            if(programName != null) {
+                generator.writeStringField("program", programName);
+            }
+            generator.writeStringField("truncated", reason);
+            generator.writeEndObject();
+            generator.writeRaw(NEW_LINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void endProgram() {
+        try {
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void programFailed(String programName, Throwable cause) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("program", programName);
+            generator.writeStringField("error", String.valueOf(cause));
+            generator.writeEndObject();
+            generator.writeRaw(NEW_LINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        endProgram();
+        cause.printStackTrace();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
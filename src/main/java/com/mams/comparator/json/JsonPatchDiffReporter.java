@@ -0,0 +1,112 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mams.comparator.json.CompareJsons.DiffModes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Writes the diffs as an RFC 6902 JSON Patch that turns the first document into the second, as far as the
+ * configured properties go. A standalone comparison produces a single patch, a comparison of environments an
+ * object with one patch per program name:
+ * <pre>
+ * {"Know Your Numbers":[{"op":"replace","path":"/activities/0/frequency","value":"ONCE"}, ...], ...}
+ * </pre>
+ * Operations are written in report order; the reported paths already account for the array elements removed
+ * before them, and added array elements are appended with "/-". An array that is missing or not an array on
+ * either side is replaced as a whole. A patch of a comparison cut short by its budget only goes part of the way.
+ */
+final class JsonPatchDiffReporter implements DiffReporter {
+
+    private final JsonGenerator generator;
+
+    private boolean programsStarted;
+
+    private String programName;
+
+    JsonPatchDiffReporter(Writer out, ObjectMapper objectMapper) throws IOException {
+        this.generator = objectMapper.getFactory().createGenerator(out);
+    }
+
+    @Override
+    public void startProgram(String programName) {
+        this.programName = programName;
+        try {
+            if(!isNull(programName)) {
+                if(!programsStarted) {
+                    generator.writeStartObject();
+                    programsStarted = true;
+                }
+                generator.writeFieldName(programName);
+            }
+            generator.writeStartArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void diff(DiffPath path, String srcValue, String destValue, DiffModes mode, JsonNode destNode) {
+        try {
+            generator.writeStartObject();
+            if(mode == DiffModes.ADDED) {
+                generator.writeStringField("op", "add");
+            } else if(mode == DiffModes.DELETED && isNull(destNode)) {
+                generator.writeStringField("op", "remove");
+            } else {
+                generator.writeStringField("op", "replace");
+            }
+            generator.writeStringField("path", path.getPointer());
+            if(mode != DiffModes.DELETED || !isNull(destNode)) {
+                generator.writeFieldName("value");
+                if(isNull(destNode)) {
+                    generator.writeNull();
+                } else {
+                    generator.writeTree(destNode);
+                }
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A patch has no room for it, so the patch is left as far as it goes and a warning is printed on the
+     * standard error.
+     */
+    @Override
+    public void truncated(String reason) {
+        System.err.println("Patch " + (isNull(programName) ? "" : "of " + programName + " ") + "is incomplete: " + reason);
+    }
+
+    @Override
+    public void endProgram() {
+        try {
+            generator.writeEndArray();
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void programFailed(String programName, Throwable cause) {
+        cause.printStackTrace();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(programsStarted) {
+            generator.writeEndObject();
+        }
+        generator.writeRaw(System.lineSeparator());
+        generator.close();
+    }
+}
@@ -0,0 +1,510 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.CharTypes;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * A parsed document laid out flat in primitive arrays, as a compact alternative to a Jackson tree for large
+ * payloads. Nodes are numbered in document order, so a subtree is the range from its node to {@link #next}
+ * of it, and the children of a container follow it one subtree after the other:
+ *
+ * - the type of every node, and the field name it has in its parent object as an index into a table of
+ *   interned names
+ * - the number of children of a container, or the byte length of a scalar
+ * - the byte offset of a scalar in a single buffer holding all scalars as UTF-8: strings decoded, numbers in
+ *   the canonical text Jackson gives them (1.0E10, not 1e10)
+ * - a 64-bit structural hash of every subtree, computed bottom-up while parsing
+ *
+ * That takes 25 bytes per node plus the scalar bytes, where a Jackson tree takes an object per node, a map
+ * entry per field and a String per scalar. Scalars are compared on their bytes and subtrees on their hashes
+ * first, without creating any object. The comparator reaches the tape through {@link TapeNode} views, created
+ * when a node is looked at.
+ *
+ * A tape is read-only once built and can be shared between threads. It matches the Jackson tree the
+ * configured ObjectMapper would read node for node: objects are equal regardless of field order, numbers are
+ * equal when Jackson's would be. Documents the tape does not represent, an object with a field name given
+ * twice or a mapper reading numbers as BigDecimal or BigInteger, are read as Jackson trees instead, and so are
+ * the documents compared with them.
+ */
+final class JsonTape {
+
+    static final byte OBJECT = 1, ARRAY = 2, STRING = 3, INT = 4, LONG = 5, BIG_INTEGER = 6, DOUBLE = 7,
+            TRUE = 8, FALSE = 9, NULL = 10;
+
+    /**
+     * Objects with more fields than this get a name index the first time a field is looked up by name.
+     */
+    private static final int INDEXED_OBJECT_SIZE = 16;
+
+    private byte[] types;
+
+    private int[] names, next, sizes, offsets;
+
+    private long[] hashes;
+
+    private byte[] text;
+
+    private int count, textLength;
+
+    private String[] nameTable = new String[64];
+
+    private final Map<String, Integer> nameIds = new HashMap<>();
+
+    private int[] lastObjectByName = new int[64];
+
+    private final Map<Integer, Map<Integer, Integer>> fieldIndexes = new ConcurrentHashMap<>();
+
+    private JsonTape(int jsonLength) {
+        int nodes = Math.max(16, jsonLength / 16);
+        types = new byte[nodes];
+        names = new int[nodes];
+        next = new int[nodes];
+        sizes = new int[nodes];
+        offsets = new int[nodes];
+        hashes = new long[nodes];
+        text = new byte[Math.max(64, jsonLength / 2)];
+    }
+
+    /**
+     * Reads a document into a tape, or into a Jackson tree when the tape cannot represent it. Null for empty
+     * content, as for {@link ObjectMapper#readTree(byte[])}.
+     */
+    static JsonNode read(byte[] json, ObjectMapper objectMapper) throws IOException {
+        if(objectMapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+                || objectMapper.isEnabled(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS)) {
+            return objectMapper.readTree(json);
+        }
+        JsonTape tape = new JsonTape(json.length);
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if(isNull(parser.nextToken()) || !tape.append(parser)) {
+                return objectMapper.readTree(json);
+            }
+        }
+        tape.trim();
+        return new TapeNode(tape, 0);
+    }
+
+    /**
+     * The documents of one comparison, all in the same form: when some could not be read into a tape, the
+     * others are copied into Jackson trees too, since a Jackson node never equals a tape node.
+     */
+    static List<JsonNode> alike(List<JsonNode> documents) {
+        boolean tapes = false, trees = false;
+        for (JsonNode document : documents) {
+            tapes |= document instanceof TapeNode;
+            trees |= nonNull(document) && !(document instanceof TapeNode);
+        }
+        if(!tapes || !trees) {
+            return documents;
+        }
+        List<JsonNode> copies = new ArrayList<>(documents.size());
+        for (JsonNode document : documents) {
+            copies.add(document instanceof TapeNode ? document.deepCopy() : document);
+        }
+        return copies;
+    }
+
+    /**
+     * Appends the value the parser is positioned on. False when an object has a field name twice.
+     */
+    private boolean append(JsonParser parser) throws IOException {
+        int[] open = new int[16];
+        int depth = 0, name = -1;
+        for (JsonToken token = parser.getCurrentToken(); ; token = parser.nextToken()) {
+            switch (token) {
+                case FIELD_NAME:
+                    name = nameId(parser.getCurrentName());
+                    if(isDuplicate(open[depth - 1], name)) {
+                        return false;
+                    }
+                    continue;
+                case START_OBJECT:
+                case START_ARRAY:
+                    if(depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth++] = add(token == JsonToken.START_OBJECT ? OBJECT : ARRAY, name);
+                    name = -1;
+                    continue;
+                case END_OBJECT:
+                case END_ARRAY:
+                    close(open[--depth]);
+                    break;
+                default:
+                    appendScalar(parser, token, name);
+                    name = -1;
+            }
+            if(depth == 0) {
+                return true;
+            }
+        }
+    }
+
+    private void appendScalar(JsonParser parser, JsonToken token, int name) throws IOException {
+        int node;
+        switch (token) {
+            case VALUE_STRING:
+                node = add(STRING, name);
+                appendUtf8(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                break;
+            case VALUE_NUMBER_INT:
+                JsonParser.NumberType numberType = parser.getNumberType();
+                if(numberType == JsonParser.NumberType.INT) {
+                    node = add(INT, name);
+                    appendAscii(Integer.toString(parser.getIntValue()));
+                } else if(numberType == JsonParser.NumberType.LONG) {
+                    node = add(LONG, name);
+                    appendAscii(Long.toString(parser.getLongValue()));
+                } else {
+                    node = add(BIG_INTEGER, name);
+                    appendAscii(parser.getBigIntegerValue().toString());
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                node = add(DOUBLE, name);
+                appendAscii(Double.toString(parser.getDoubleValue()));
+                break;
+            case VALUE_TRUE:
+                node = add(TRUE, name);
+                break;
+            case VALUE_FALSE:
+                node = add(FALSE, name);
+                break;
+            default:
+                node = add(NULL, name);
+        }
+        next[node] = count;
+        sizes[node] = textLength - offsets[node];
+        long hash = types[node];
+        for (int i = offsets[node]; i < textLength; i++) {
+            hash = 31 * hash + text[i];
+        }
+        hashes[node] = SubtreeFingerprints.mix(hash);
+    }
+
+    private int add(byte type, int name) {
+        if(count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            names = Arrays.copyOf(names, capacity);
+            next = Arrays.copyOf(next, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        types[count] = type;
+        names[count] = name;
+        offsets[count] = textLength;
+        return count++;
+    }
+
+    /**
+     * Ends a container once all its children are on the tape: counts them and hashes it from their hashes,
+     * object fields independently of their order, array elements in order.
+     */
+    private void close(int node) {
+        next[node] = count;
+        int size = 0;
+        long hash = types[node] == OBJECT ? SubtreeFingerprints.OBJECT_SEED : SubtreeFingerprints.ARRAY_SEED;
+        for (int child = node + 1; child < count; child = next[child]) {
+            size++;
+            if(types[node] == OBJECT) {
+                hash += SubtreeFingerprints.mix(SubtreeFingerprints.mix(nameTable[names[child]].hashCode()) ^ hashes[child]);
+            } else {
+                hash = SubtreeFingerprints.mix(hash ^ hashes[child]) * 31;
+            }
+        }
+        sizes[node] = size;
+        hashes[node] = hash;
+    }
+
+    private int nameId(String name) {
+        Integer id = nameIds.get(name);
+        if(isNull(id)) {
+            id = nameIds.size();
+            if(id == nameTable.length) {
+                nameTable = Arrays.copyOf(nameTable, id * 2);
+                lastObjectByName = Arrays.copyOf(lastObjectByName, id * 2);
+            }
+            nameTable[id] = name;
+            nameIds.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * Whether the open object already has a field with this name. The last object each name was seen in
+     * answers most lookups; the fields of the object are only scanned when the name was seen in one of its
+     * descendants since.
+     */
+    private boolean isDuplicate(int object, int name) {
+        int lastObject = lastObjectByName[name] - 1;
+        lastObjectByName[name] = object + 1;
+        if(lastObject == object) {
+            return true;
+        }
+        if(lastObject > object) {
+            for (int child = object + 1; child < count; child = next[child]) {
+                if(names[child] == name) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void appendUtf8(char[] chars, int offset, int length) {
+        ensureText(length * 3);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            char c = chars[i];
+            if(c < 0x80) {
+                text[textLength++] = (byte) c;
+            } else if(c < 0x800) {
+                text[textLength++] = (byte) (0xC0 | c >> 6);
+                text[textLength++] = (byte) (0x80 | c & 0x3F);
+            } else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+                int codePoint = Character.toCodePoint(c, chars[++i]);
+                text[textLength++] = (byte) (0xF0 | codePoint >> 18);
+                text[textLength++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                text[textLength++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                text[textLength++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                // lone surrogates too, so that different strings never share the same bytes
+                text[textLength++] = (byte) (0xE0 | c >> 12);
+                text[textLength++] = (byte) (0x80 | c >> 6 & 0x3F);
+                text[textLength++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void appendAscii(String value) {
+        ensureText(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            text[textLength++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void ensureText(int length) {
+        if(textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+        }
+    }
+
+    private void trim() {
+        types = Arrays.copyOf(types, count);
+        names = Arrays.copyOf(names, count);
+        next = Arrays.copyOf(next, count);
+        sizes = Arrays.copyOf(sizes, count);
+        offsets = Arrays.copyOf(offsets, count);
+        hashes = Arrays.copyOf(hashes, count);
+        text = Arrays.copyOf(text, textLength);
+        nameTable = Arrays.copyOf(nameTable, nameIds.size());
+        lastObjectByName = null;
+    }
+
+    byte type(int node) {
+        return types[node];
+    }
+
+    /**
+     * Number of children of a container, 0 for a scalar.
+     */
+    int size(int node) {
+        return types[node] == OBJECT || types[node] == ARRAY ? sizes[node] : 0;
+    }
+
+    long hash(int node) {
+        return hashes[node];
+    }
+
+    int firstChild(int node) {
+        return sizes[node] == 0 ? -1 : node + 1;
+    }
+
+    /**
+     * The sibling after a child of the given container, or -1 after the last one.
+     */
+    int nextSibling(int parent, int child) {
+        return next[child] < next[parent] ? next[child] : -1;
+    }
+
+    String fieldName(int node) {
+        return nameTable[names[node]];
+    }
+
+    /**
+     * The field of an object with the given name, or -1 when it has none.
+     */
+    int field(int object, String fieldName) {
+        Integer name = nameIds.get(fieldName);
+        if(isNull(name)) {
+            return -1;
+        }
+        if(sizes[object] > INDEXED_OBJECT_SIZE) {
+            Integer child = fieldIndexes.computeIfAbsent(object, this::indexFields).get(name);
+            return isNull(child) ? -1 : child;
+        }
+        for (int child = firstChild(object); child >= 0; child = nextSibling(object, child)) {
+            if(names[child] == name) {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    private Map<Integer, Integer> indexFields(int object) {
+        Map<Integer, Integer> index = new HashMap<>(sizes[object] * 2);
+        for (int child = firstChild(object); child >= 0; child = nextSibling(object, child)) {
+            index.put(names[child], child);
+        }
+        return index;
+    }
+
+    /**
+     * The child of an array at the given position, or -1 when out of range.
+     */
+    int element(int array, int index) {
+        if(index < 0 || index >= sizes[array]) {
+            return -1;
+        }
+        int child = array + 1;
+        for (int i = 0; i < index; i++) {
+            child = next[child];
+        }
+        return child;
+    }
+
+    /**
+     * Text of a scalar as Jackson's asText() gives it.
+     */
+    String scalarText(int node) {
+        switch (types[node]) {
+            case TRUE:
+                return "true";
+            case FALSE:
+                return "false";
+            case NULL:
+                return "null";
+            case STRING:
+                return decodeUtf8(offsets[node], sizes[node]);
+            default:
+                return new String(text, offsets[node], sizes[node], StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private String decodeUtf8(int offset, int length) {
+        char[] chars = new char[length];
+        int charCount = 0;
+        for (int i = offset, end = offset + length; i < end; ) {
+            int b = text[i++] & 0xFF;
+            if(b < 0x80) {
+                chars[charCount++] = (char) b;
+            } else if(b < 0xE0) {
+                chars[charCount++] = (char) ((b & 0x1F) << 6 | text[i++] & 0x3F);
+            } else if(b < 0xF0) {
+                chars[charCount++] = (char) ((b & 0x0F) << 12 | (text[i++] & 0x3F) << 6 | text[i++] & 0x3F);
+            } else {
+                int codePoint = (b & 0x07) << 18 | (text[i++] & 0x3F) << 12 | (text[i++] & 0x3F) << 6 | text[i++] & 0x3F;
+                chars[charCount++] = Character.highSurrogate(codePoint);
+                chars[charCount++] = Character.lowSurrogate(codePoint);
+            }
+        }
+        return new String(chars, 0, charCount);
+    }
+
+    /**
+     * Whether a node of this tape and a node of the other one hold the same value, the way Jackson's equals
+     * tells their trees apart.
+     */
+    boolean equal(int node, JsonTape other, int otherNode) {
+        if(other == this && node == otherNode) {
+            return true;
+        }
+        if(hashes[node] != other.hashes[otherNode] || types[node] != other.types[otherNode]
+                || sizes[node] != other.sizes[otherNode]) {
+            return false;
+        }
+        switch (types[node]) {
+            case OBJECT:
+                for (int child = firstChild(node); child >= 0; child = nextSibling(node, child)) {
+                    int otherChild = other.field(otherNode, fieldName(child));
+                    if(otherChild < 0 || !equal(child, other, otherChild)) {
+                        return false;
+                    }
+                }
+                return true;
+            case ARRAY:
+                for (int child = firstChild(node), otherChild = other.firstChild(otherNode); child >= 0;
+                     child = nextSibling(node, child), otherChild = other.nextSibling(otherNode, otherChild)) {
+                    if(!equal(child, other, otherChild)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                for (int i = 0; i < sizes[node]; i++) {
+                    if(text[offsets[node] + i] != other.text[other.offsets[otherNode] + i]) {
+                        return false;
+                    }
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Appends a node as the JSON text Jackson's toString() gives it.
+     */
+    void appendJson(StringBuilder json, int node) {
+        switch (types[node]) {
+            case OBJECT:
+                json.append('{');
+                for (int child = firstChild(node); child >= 0; child = nextSibling(node, child)) {
+                    if(child != node + 1) {
+                        json.append(',');
+                    }
+                    appendQuoted(json, fieldName(child));
+                    json.append(':');
+                    appendJson(json, child);
+                }
+                json.append('}');
+                break;
+            case ARRAY:
+                json.append('[');
+                for (int child = firstChild(node); child >= 0; child = nextSibling(node, child)) {
+                    if(child != node + 1) {
+                        json.append(',');
+                    }
+                    appendJson(json, child);
+                }
+                json.append(']');
+                break;
+            case STRING:
+                appendQuoted(json, scalarText(node));
+                break;
+            default:
+                json.append(scalarText(node));
+        }
+    }
+
+    private static void appendQuoted(StringBuilder json, String value) {
+        json.append('"');
+        CharTypes.appendQuoted(json, value);
+        json.append('"');
+    }
+}
@@ -0,0 +1,18 @@
+package com.mams.comparator.json;
+
+/**
+ * A {@link DiffReporter} that can also report the differences between more than two environments, one row per
+ * property with its value in each of them, see {@link EnvironmentMatrix}. Formats that only make sense for a
+ * pair of documents, like JSON Patch, do not implement it.
+ */
+interface MatrixDiffReporter extends DiffReporter {
+
+    /**
+     * Reports a property that differs between environments.
+     *
+     * @param path    location of the property
+     * @param values  value in each environment, in the order the reporter was created for, null when absent
+     * @param diff    kind of difference, MIXED when the environments differ in different ways
+     */
+    void diff(DiffPath path, String[] values, String diff);
+}
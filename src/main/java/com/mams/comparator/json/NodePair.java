@@ -0,0 +1,24 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A node of the source document, its counterpart in the destination document, and where they are: a field
+ * name or a path. Either node may be null when it is missing on that side.
+ *
+ * Holds the properties and array elements collected to be compared later, in document order.
+ */
+final class NodePair<K> {
+
+    final JsonNode srcNode;
+
+    final JsonNode destNode;
+
+    final K key;
+
+    NodePair(JsonNode srcNode, JsonNode destNode, K key) {
+        this.srcNode = srcNode;
+        this.destNode = destNode;
+        this.key = key;
+    }
+}
@@ -0,0 +1,182 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Alignment of two arrays whose elements have no identity, e.g. lists of tags or ordered steps: the longest
+ * common subsequence of their elements, found with Myers' O((N+D)D) algorithm.
+ *
+ * Elements are first reduced to ints, equal elements sharing the same int, through their subtree fingerprints
+ * (each element is confirmed equal once, against the first element with its fingerprint). The common prefix
+ * and suffix are then stripped and the rest is split recursively at the middle snake found by running the
+ * algorithm from both ends, so memory stays linear in the length of the arrays.
+ *
+ * A range whose middle snake takes more than {@link #MAX_WORK} steps to find, i.e. long arrays with hardly
+ * anything in common, is left unaligned and so reported as replaced rather than aligned in quadratic time.
+ */
+final class OrderedArrayDiff {
+
+    static final String ORDERED_MATCHING = "ORDERED";
+
+    private static final long MAX_WORK = 1L << 26;
+
+    private final int[] src, dest;
+
+    private final boolean[] srcKept, destKept;
+
+    private long steps;
+
+    OrderedArrayDiff(List<JsonNode> srcNodes, List<JsonNode> destNodes, SubtreeFingerprints fingerprints) {
+        Map<Long, List<Integer>> idsByFingerprint = new HashMap<>();
+        List<JsonNode> distinct = new ArrayList<>();
+        src = ids(srcNodes, idsByFingerprint, distinct, fingerprints);
+        dest = ids(destNodes, idsByFingerprint, distinct, fingerprints);
+        srcKept = new boolean[src.length];
+        destKept = new boolean[dest.length];
+        align(0, src.length, 0, dest.length);
+    }
+
+    /**
+     * Whether the source element at the given position is part of the common subsequence.
+     */
+    boolean isSrcKept(int position) {
+        return srcKept[position];
+    }
+
+    /**
+     * Whether the destination element at the given position is part of the common subsequence.
+     */
+    boolean isDestKept(int position) {
+        return destKept[position];
+    }
+
+    /**
+     * Number of steps the middle snake searches took, the measure {@link #MAX_WORK} applies to.
+     */
+    long getSteps() {
+        return steps;
+    }
+
+    private static int[] ids(List<JsonNode> nodes, Map<Long, List<Integer>> idsByFingerprint, List<JsonNode> distinct,
+                             SubtreeFingerprints fingerprints) {
+        int[] ids = new int[nodes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            JsonNode node = nodes.get(i);
+            List<Integer> candidates = idsByFingerprint.computeIfAbsent(fingerprints.fingerprint(node), fingerprint -> new ArrayList<>(1));
+            ids[i] = -1;
+            for (int id : candidates) {
+                if(fingerprints.areEqual(distinct.get(id), node)) {
+                    ids[i] = id;
+                    break;
+                }
+            }
+            if(ids[i] < 0) {
+                ids[i] = distinct.size();
+                candidates.add(ids[i]);
+                distinct.add(node);
+            }
+        }
+        return ids;
+    }
+
+    private void align(int srcFrom, int srcTo, int destFrom, int destTo) {
+        while (srcFrom < srcTo && destFrom < destTo && src[srcFrom] == dest[destFrom]) {
+            srcKept[srcFrom++] = true;
+            destKept[destFrom++] = true;
+        }
+        while (srcFrom < srcTo && destFrom < destTo && src[srcTo - 1] == dest[destTo - 1]) {
+            srcKept[--srcTo] = true;
+            destKept[--destTo] = true;
+        }
+        if(srcFrom == srcTo || destFrom == destTo) {
+            return;
+        }
+        long split = middleSnake(srcFrom, srcTo, destFrom, destTo);
+        if(split >= 0) {
+            int x = (int) (split >>> 32), y = (int) split;
+            align(srcFrom, srcFrom + x, destFrom, destFrom + y);
+            align(srcFrom + x, srcTo, destFrom + y, destTo);
+        }
+    }
+
+    /**
+     * Runs the forward and reverse searches until their paths overlap and returns the overlap as
+     * (x &lt;&lt; 32 | y), offsets into the ranges, or -1 when the ranges are not worth aligning.
+     */
+    private long middleSnake(int srcFrom, int srcTo, int destFrom, int destTo) {
+        int n = srcTo - srcFrom, m = destTo - destFrom;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD, length = 2 * maxD + 2;
+        int[] forward = new int[length], reverse = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(reverse, -1);
+        forward[offset + 1] = 0;
+        reverse[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int forwardStart = 0, forwardEnd = 0, reverseStart = 0, reverseEnd = 0;
+        long work = 0;
+
+        for (int d = 0; d < maxD; d++) {
+            if(work > MAX_WORK) {
+                steps += work;
+                return -1;
+            }
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k, snakeStart = x;
+                while (x < n && y < m && src[srcFrom + x] == dest[destFrom + y]) {
+                    x++;
+                    y++;
+                }
+                work += 1 + x - snakeStart;
+                forward[offset + k] = x;
+                if(x > n) {
+                    forwardEnd += 2;
+                } else if(y > m) {
+                    forwardStart += 2;
+                } else if(odd) {
+                    int reverseK = offset + delta - k;
+                    if(reverseK >= 0 && reverseK < length && reverse[reverseK] != -1 && x >= n - reverse[reverseK]) {
+                        steps += work;
+                        return (long) x << 32 | y;
+                    }
+                }
+            }
+            for (int k = -d + reverseStart; k <= d - reverseEnd; k += 2) {
+                int x = k == -d || (k != d && reverse[offset + k - 1] < reverse[offset + k + 1])
+                        ? reverse[offset + k + 1] : reverse[offset + k - 1] + 1;
+                int y = x - k, snakeStart = x;
+                while (x < n && y < m && src[srcTo - x - 1] == dest[destTo - y - 1]) {
+                    x++;
+                    y++;
+                }
+                work += 1 + x - snakeStart;
+                reverse[offset + k] = x;
+                if(x > n) {
+                    reverseEnd += 2;
+                } else if(y > m) {
+                    reverseStart += 2;
+                } else if(!odd) {
+                    int forwardK = offset + delta - k;
+                    if(forwardK >= 0 && forwardK < length && forward[forwardK] != -1) {
+                        int forwardX = forward[forwardK];
+                        if(forwardX >= n - x) {
+                            steps += work;
+                            return (long) forwardX << 32 | (forwardX - (forwardK - offset));
+                        }
+                    }
+                }
+            }
+        }
+        steps += work;
+        return -1;
+    }
+}
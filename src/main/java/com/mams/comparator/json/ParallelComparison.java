@@ -0,0 +1,262 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Compares a single document on a fork/join pool, for the few programs big enough to hold up a whole run on
+ * their own.
+ *
+ * The top-level fields of the document are compared in separate tasks, and so are the changed element pairs
+ * of large keyed arrays at any depth, once {@link CompareJsons#compareArrays} has paired them. Consecutive
+ * fields or element pairs are grouped into tasks of at least {@code threshold} nodes, so small subtrees stay
+ * sequential and a document smaller than the threshold is not split at all.
+ *
+ * Every task writes into its own {@link DiffCollector} and counts its work in its own
+ * {@link ComparisonContext}. They are replayed and added up in document order once all tasks are done, so
+ * the report is exactly the one of a sequential comparison, cut at the same diff under compare.max.diffs.
+ * A task stops once the diffs of the tasks replayed before it fill that budget along with its own. A failure
+ * of a task is thrown when its diffs have been replayed, unless the budget ran out before, as a sequential
+ * comparison would never have got that far. Tasks share the subtree fingerprints, which are all computed
+ * before the first task is forked and only read afterwards.
+ */
+final class ParallelComparison {
+
+    private final ForkJoinPool pool;
+
+    private final int threshold;
+
+    ParallelComparison(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = Math.max(1, threshold);
+    }
+
+    /**
+     * Same diffs as {@link CompareJsons#compareObject} from the root of both documents.
+     */
+    void compare(JsonNode srcJsonNode, JsonNode destJsonNode, ComparisonPlan plan, ComparisonContext context,
+                 DiffReporter reporter) {
+        SubtreeFingerprints fingerprints = context.getFingerprints();
+        if(fingerprints.areEqual(srcJsonNode, destJsonNode)) {
+            return;
+        }
+        fingerprint(srcJsonNode, fingerprints);
+        fingerprint(destJsonNode, fingerprints);
+        if(weigh(new NodePair<>(srcJsonNode, destJsonNode, null), fingerprints, threshold) < threshold) {
+            CompareJsons.compareObject(srcJsonNode, destJsonNode, plan, DiffPath.ROOT, context, reporter);
+            return;
+        }
+
+        List<NodePair<String>> fields = new ArrayList<>();
+        srcJsonNode.fields().forEachRemaining(field -> {
+            if(plan.isPropertyNeededForComparision(field.getKey())) {
+                JsonNode destProp = isNull(destJsonNode) ? null : destJsonNode.get(field.getKey());
+                fields.add(new NodePair<>(field.getValue(), destProp, field.getKey()));
+            }
+        });
+        List<List<NodePair<String>>> chunks = split(fields, fingerprints);
+        ComparisonContext[] contexts = context.fork(this, 2 * chunks.size());
+        List<CompareFields> tasks = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            tasks.add(new CompareFields(chunks.get(i), plan, contexts[i], contexts[chunks.size() + i]));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        for (CompareFields task : tasks) {
+            task.diffs.replayTo(reporter, context);
+            rethrow(task.failure, context);
+        }
+        for (CompareFields task : tasks) {
+            task.arrayDiffs.replayTo(reporter, context);
+            rethrow(task.arrayFailure, context);
+        }
+        tasks.forEach(task -> {
+            context.add(task.context);
+            context.add(task.arrayContext);
+        });
+    }
+
+    /**
+     * Compares the matched or deleted element pairs of a keyed array, in tasks when they add up to more than
+     * one chunk. Each pair is the source element, its destination partner or null, and the element path.
+     */
+    void compareElements(List<NodePair<DiffPath>> elementPairs, ComparisonPlan arrayPlan, ComparisonContext context,
+                         DiffReporter reporter) {
+        List<List<NodePair<DiffPath>>> chunks = split(elementPairs, context.getFingerprints());
+        if(chunks.size() < 2 || ForkJoinTask.getPool() != pool) {
+            compareSequentially(elementPairs, arrayPlan, context, reporter);
+            return;
+        }
+
+        ComparisonContext[] contexts = context.fork(this, chunks.size());
+        List<CompareElements> tasks = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            tasks.add(new CompareElements(chunks.get(i), arrayPlan, contexts[i]));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        for (CompareElements task : tasks) {
+            task.diffs.replayTo(reporter, context);
+            rethrow(task.failure, context);
+        }
+        tasks.forEach(task -> context.add(task.context));
+    }
+
+    /**
+     * Throws the failure of a task whose diffs were just replayed, unless the budget ran out before a
+     * sequential comparison would have reached it.
+     */
+    private static void rethrow(RuntimeException failure, ComparisonContext context) {
+        if(nonNull(failure) && !context.isExhausted()) {
+            throw failure;
+        }
+    }
+
+    private static void compareSequentially(List<NodePair<DiffPath>> elementPairs, ComparisonPlan arrayPlan,
+                                            ComparisonContext context, DiffReporter reporter) {
+        elementPairs.forEach(elementPair -> CompareJsons.compareArrayElement(
+                elementPair.srcNode,
+                elementPair.destNode,
+                arrayPlan,
+                elementPair.key,
+                context,
+                reporter));
+    }
+
+    /**
+     * Groups consecutive pairs into chunks of at least threshold nodes, the last one possibly smaller.
+     */
+    private <P extends NodePair<?>> List<List<P>> split(List<P> pairs, SubtreeFingerprints fingerprints) {
+        List<List<P>> chunks = new ArrayList<>();
+        List<P> chunk = new ArrayList<>();
+        int weight = 0;
+        for (P pair : pairs) {
+            chunk.add(pair);
+            weight += weigh(pair, fingerprints, threshold - weight);
+            if(weight >= threshold) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                weight = 0;
+            }
+        }
+        if(!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Number of nodes of both sides of a pair, counted up to cap. Subtrees known to be equal count as one node,
+     * since comparing them stops at their fingerprints.
+     */
+    private static int weigh(NodePair<?> pair, SubtreeFingerprints fingerprints, int cap) {
+        JsonNode srcNode = pair.srcNode, destNode = pair.destNode;
+        if(nonNull(srcNode) && nonNull(destNode) && srcNode.isContainerNode() && destNode.isContainerNode()
+                && fingerprints.fingerprint(srcNode) == fingerprints.fingerprint(destNode)) {
+            return 1;
+        }
+        int weight = weigh(srcNode, cap);
+        return weight + weigh(destNode, cap - weight);
+    }
+
+    private static int weigh(JsonNode node, int cap) {
+        if(isNull(node) || cap <= 0) {
+            return 0;
+        }
+        int weight = 1;
+        for (JsonNode child : node) {
+            if(weight >= cap) {
+                break;
+            }
+            weight += weigh(child, cap - weight);
+        }
+        return weight;
+    }
+
+    private static void fingerprint(JsonNode node, SubtreeFingerprints fingerprints) {
+        if(nonNull(node) && node.isContainerNode()) {
+            fingerprints.fingerprint(node);
+        }
+    }
+
+    /**
+     * Compares a chunk of top-level fields. Their array properties are compared after all the other fields of
+     * the chunk and reported after the other fields of all chunks, as {@link CompareJsons#compareObject} does,
+     * so they are counted in a context of their own, replayed after the contexts of all the other fields.
+     */
+    private static final class CompareFields extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<NodePair<String>> fields;
+
+        private final ComparisonPlan plan;
+
+        private final ComparisonContext context, arrayContext;
+
+        private final DiffCollector diffs = new DiffCollector(), arrayDiffs = new DiffCollector();
+
+        private RuntimeException failure, arrayFailure;
+
+        private CompareFields(List<NodePair<String>> fields, ComparisonPlan plan, ComparisonContext context,
+                              ComparisonContext arrayContext) {
+            this.fields = fields;
+            this.plan = plan;
+            this.context = context;
+            this.arrayContext = arrayContext;
+        }
+
+        @Override
+        protected void compute() {
+            List<CompareJsons.ArrayProperty> arrayProperties = new ArrayList<>();
+            try {
+                fields.forEach(field -> CompareJsons.compareProperty(field.srcNode, field.destNode,
+                        plan.child(field.key), DiffPath.ROOT, field.key, arrayProperties, context, diffs));
+            } catch (RuntimeException e) {
+                failure = e;
+                return;
+            }
+            try {
+                CompareJsons.compareArrayProperties(arrayProperties, arrayContext, arrayDiffs);
+            } catch (RuntimeException e) {
+                arrayFailure = e;
+            }
+        }
+    }
+
+    private static final class CompareElements extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<NodePair<DiffPath>> elementPairs;
+
+        private final ComparisonPlan arrayPlan;
+
+        private final ComparisonContext context;
+
+        private final DiffCollector diffs = new DiffCollector();
+
+        private RuntimeException failure;
+
+        private CompareElements(List<NodePair<DiffPath>> elementPairs, ComparisonPlan arrayPlan, ComparisonContext context) {
+            this.elementPairs = elementPairs;
+            this.arrayPlan = arrayPlan;
+            this.context = context;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                compareSequentially(elementPairs, arrayPlan, context, diffs);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+}
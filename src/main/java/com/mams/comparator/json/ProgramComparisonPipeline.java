@@ -0,0 +1,271 @@
+package com.mams.comparator.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
+/**
+ * Compares every program present in both environments.
+ *
+ * Programs are paired by name through a hash join. Both environments are fetched concurrently on a bounded
+ * fetch pool and each pair is diffed on a separate diff pool as soon as both payloads have arrived, into a
+ * {@link DiffCollector}. Reports are still written in source program order: at most {@code window} programs
+ * are in flight ahead of the one being written, which keeps the number of buffered payloads bounded.
+ *
+ * Each stage of each program is timed into {@link ComparisonMetrics}.
+ */
+final class ProgramComparisonPipeline {
+
+    private final String env1, env1URL, env2, env2URL;
+
+    private final int fetchParallelism, diffParallelism, window;
+
+    private final boolean streaming;
+
+    private final DiffReporter reporter;
+
+    private final ComparisonMetrics metrics;
+
+    ProgramComparisonPipeline(String env1, String env1URL, String env2, String env2URL,
+                              int fetchParallelism, int diffParallelism, boolean streaming, DiffReporter reporter,
+                              ComparisonMetrics metrics) {
+        this.env1 = env1;
+        this.env1URL = env1URL;
+        this.env2 = env2;
+        this.env2URL = env2URL;
+        this.fetchParallelism = Math.max(1, fetchParallelism);
+        this.diffParallelism = Math.max(1, diffParallelism);
+        this.window = Math.max(this.fetchParallelism, this.diffParallelism) * 2;
+        this.streaming = streaming;
+        this.reporter = reporter;
+        this.metrics = metrics;
+    }
+
+    void run() throws IOException {
+        run(null);
+    }
+
+    /**
+     * Compares the programs with the given names, ignoring case, or all of them when programNames is null.
+     */
+    void run(Collection<String> programNames) throws IOException {
+        ExecutorService fetchPool = Executors.newFixedThreadPool(fetchParallelism, namedDaemonThreads("fetch"));
+        ExecutorService diffPool = Executors.newFixedThreadPool(diffParallelism, namedDaemonThreads("diff"));
+        try {
+            CompletableFuture<List<List<String>>> programListSource = supplyAsync(() -> fetchPrograms(env1, env1URL), fetchPool);
+            CompletableFuture<List<List<String>>> programListTarget = supplyAsync(() -> fetchPrograms(env2, env2URL), fetchPool);
+
+            List<ProgramPair> pairs = joinByName(join(programListSource), join(programListTarget));
+            if(programNames != null) {
+                Set<String> nameKeys = new HashSet<>();
+                programNames.forEach(programName -> nameKeys.add(programName.toLowerCase(Locale.ROOT)));
+                pairs.removeIf(pair -> !nameKeys.contains(pair.nameKey()));
+            }
+
+            List<ComparisonMetrics.ProgramMetrics> programMetrics = new ArrayList<>(pairs.size());
+            runInOrder(pairs.size(), window, submitted -> {
+                programMetrics.add(metrics.startProgram(pairs.get(submitted).programName));
+                return submit(pairs.get(submitted), programMetrics.get(submitted), fetchPool, diffPool);
+            }, (result, emitted) -> emit(pairs.get(emitted), result, programMetrics.get(emitted)));
+        } finally {
+            fetchPool.shutdownNow();
+            diffPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits items 0 to count - 1 in order and hands their results over to emit in the same order, with at most
+     * window items submitted ahead of the one being emitted. Results are dropped once emitted, so only the
+     * results of the window are held at a time.
+     */
+    static <R> void runInOrder(int count, int window, IntFunction<CompletableFuture<R>> submit,
+                               ObjIntConsumer<CompletableFuture<R>> emit) {
+        List<CompletableFuture<R>> inFlight = new ArrayList<>(count);
+        int submitted = 0;
+        for (int emitted = 0; emitted < count; emitted++) {
+            while (submitted < count && submitted < emitted + window) {
+                inFlight.add(submit.apply(submitted++));
+            }
+            emit.accept(inFlight.get(emitted), emitted);
+            inFlight.set(emitted, null);
+        }
+    }
+
+    /**
+     * Pairs source and target programs by case-insensitive name. As with the original nested lookup, the first
+     * target program with a given name wins and source programs without a counterpart are skipped.
+     */
+    static List<ProgramPair> joinByName(List<List<String>> programListSource, List<List<String>> programListTarget) {
+        Map<String, List<String>> targetByName = new HashMap<>();
+        programListTarget.forEach(trgProgramDetails -> targetByName.putIfAbsent(nameKey(trgProgramDetails), trgProgramDetails));
+
+        List<ProgramPair> pairs = new ArrayList<>();
+        programListSource.forEach(srcProgramDetails -> {
+            List<String> matchedProgram = targetByName.get(nameKey(srcProgramDetails));
+            if(matchedProgram != null) {
+                pairs.add(new ProgramPair(srcProgramDetails, matchedProgram));
+            }
+        });
+        return pairs;
+    }
+
+    private CompletableFuture<DiffCollector> submit(ProgramPair pair, ComparisonMetrics.ProgramMetrics programMetrics,
+                                                    ExecutorService fetchPool, ExecutorService diffPool) {
+        String srcProgramId = pair.srcProgramId;
+        String destProgramId = pair.destProgramId;
+        if(streaming) {
+            CompletableFuture<InputStream> srcJson = supplyAsync(() -> fetchJsonStream(env1, env1URL, srcProgramId, programMetrics, true), fetchPool);
+            CompletableFuture<InputStream> destJson = supplyAsync(() -> fetchJsonStream(env2, env2URL, destProgramId, programMetrics, false), fetchPool);
+            return srcJson.thenCombineAsync(destJson, (jsonOne, jsonTwo) -> {
+                DiffCollector diffs = new DiffCollector();
+                try {
+                    CompareJsons.compareJsonsStreaming(jsonOne, jsonTwo, diffs, programMetrics);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return diffs;
+            }, diffPool).whenComplete((diffs, failure) -> {
+                if(failure != null) {
+                    closeOnceOpened(srcJson);
+                    closeOnceOpened(destJson);
+                }
+            });
+        }
+        CompletableFuture<byte[]> srcJson = supplyAsync(() -> fetchJson(env1, env1URL, srcProgramId, programMetrics, true), fetchPool);
+        CompletableFuture<byte[]> destJson = supplyAsync(() -> fetchJson(env2, env2URL, destProgramId, programMetrics, false), fetchPool);
+        return srcJson.thenCombineAsync(destJson, (jsonOne, jsonTwo) -> {
+            DiffCollector diffs = new DiffCollector();
+            try {
+                CompareJsons.compareJsons(jsonOne, jsonTwo, diffs, programMetrics);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return diffs;
+        }, diffPool);
+    }
+
+    private void emit(ProgramPair pair, CompletableFuture<DiffCollector> result,
+                      ComparisonMetrics.ProgramMetrics programMetrics) {
+        DiffCollector diffs;
+        try {
+            diffs = result.join();
+        } catch (CompletionException e) {
+            programMetrics.failed();
+            reporter.programFailed(pair.programName, e.getCause());
+            return;
+        }
+        ComparisonMetrics.RenderEvent render = programMetrics.beginRender();
+        reporter.startProgram(pair.programName);
+        diffs.replayTo(reporter);
+        reporter.endProgram();
+        programMetrics.endRender(render);
+    }
+
+    private List<List<String>> fetchPrograms(String env, String url) {
+        ComparisonMetrics.FetchEvent fetch = metrics.beginProgramListFetch(env);
+        try {
+            byte[] jsonText = CompareJsons.fetchProgramList(env, url);
+            metrics.endProgramListFetch(fetch, jsonText.length);
+            return CompareJsons.parsePrograms(jsonText);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] fetchJson(String env, String url, String programId, ComparisonMetrics.ProgramMetrics programMetrics,
+                                    boolean source) {
+        ComparisonMetrics.FetchEvent fetch = programMetrics.beginFetch(env);
+        byte[] json = fetchJson(env, url, programId);
+        programMetrics.endFetch(fetch, source, json.length);
+        return json;
+    }
+
+    private static InputStream fetchJsonStream(String env, String url, String programId, ComparisonMetrics.ProgramMetrics programMetrics,
+                                               boolean source) {
+        ComparisonMetrics.FetchEvent fetch = programMetrics.beginFetch(env);
+        InputStream json = fetchJsonStream(env, url, programId);
+        programMetrics.endFetch(fetch, source, -1);
+        return json;
+    }
+
+    /**
+     * Closes the stream of a fetch, now or whenever it completes, for comparisons that failed before reading
+     * it: with the other fetch failing, the open connection would otherwise never be released. Closing a stream
+     * the comparison already closed does nothing.
+     */
+    private static void closeOnceOpened(CompletableFuture<InputStream> json) {
+        json.thenAccept(stream -> {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // nothing left to release
+            }
+        });
+    }
+
+    static List<List<String>> getPrograms(String env, String url) {
+        try {
+            return CompareJsons.getPrograms(env, url);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static byte[] fetchJson(String env, String url, String programId) {
+        try {
+            return CompareJsons.fetchJson(env, url, programId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static InputStream fetchJsonStream(String env, String url, String programId) {
+        try {
+            return CompareJsons.fetchJsonStream(env, url, programId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    static String nameKey(List<String> programDetails) {
+        return programDetails.get(1).toLowerCase(Locale.ROOT);
+    }
+
+    static ThreadFactory namedDaemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package com.mams.comparator.json;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A program of the source environment and the program with the same name, ignoring case, in the target
+ * environment: their ids, as listed by each environment, and the name of the source program.
+ */
+final class ProgramPair {
+
+    final String srcProgramId;
+
+    final String destProgramId;
+
+    final String programName;
+
+    ProgramPair(List<String> srcProgramDetails, List<String> destProgramDetails) {
+        this.srcProgramId = srcProgramDetails.get(0);
+        this.destProgramId = destProgramDetails.get(0);
+        this.programName = srcProgramDetails.get(1);
+    }
+
+    /**
+     * The name the programs were paired by.
+     */
+    String nameKey() {
+        return programName.toLowerCase(Locale.ROOT);
+    }
+}
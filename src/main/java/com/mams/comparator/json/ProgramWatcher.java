@@ -0,0 +1,234 @@
+package com.mams.comparator.json;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.Objects.isNull;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
+/**
+ * Compares two environments again and again, every {@code interval} milliseconds, and reports how the
+ * differences between them move: the diffs that appeared since the previous cycle (new drift) and the ones
+ * that went away (resolved drift). The first cycle reports all current differences.
+ *
+ * Between cycles only the SHA-256 of the payloads of each program is kept, with the fingerprints of its diffs
+ * to tell new ones from old ones and the diffs themselves as text, to report them once resolved. A program is
+ * parsed and compared again only when the payload of either environment changed, so apart from the fetches the
+ * cost of a cycle follows the amount of change rather than the number of programs. With snapshot.enabled the
+ * fetches are conditional GETs, which mostly come back as 304 Not Modified.
+ *
+ * A program no longer in the list of either environment has its diffs reported as resolved, and is forgotten.
+ * Programs are compared through the same window as in {@link ProgramComparisonPipeline} and reported in
+ * source program order.
+ *
+ * Resolved drift is not reported in a JSON Patch, which only takes the source documents to the destination
+ * ones: the places where both now agree need no operation.
+ */
+final class ProgramWatcher {
+
+    private final String env1, env1URL, env2, env2URL;
+
+    private final int fetchParallelism, diffParallelism, window;
+
+    private final long interval;
+
+    private final DiffReporter reporter;
+
+    private final boolean reportResolved;
+
+    private final Map<String, ProgramState> states = new LinkedHashMap<>();
+
+    private int cycle;
+
+    ProgramWatcher(String env1, String env1URL, String env2, String env2URL,
+                   int fetchParallelism, int diffParallelism, long interval, DiffReporter reporter) {
+        this.env1 = env1;
+        this.env1URL = env1URL;
+        this.env2 = env2;
+        this.env2URL = env2URL;
+        this.fetchParallelism = Math.max(1, fetchParallelism);
+        this.diffParallelism = Math.max(1, diffParallelism);
+        this.window = Math.max(this.fetchParallelism, this.diffParallelism) * 2;
+        this.interval = interval;
+        this.reporter = reporter;
+        this.reportResolved = !(reporter instanceof JsonPatchDiffReporter);
+    }
+
+    /**
+     * Runs cycles until the thread is interrupted. A cycle that fails as a whole (e.g. a program list could not
+     * be fetched) is reported and retried at the next interval, keeping the state of the last good cycle.
+     */
+    void run() {
+        ExecutorService fetchPool = Executors.newFixedThreadPool(fetchParallelism, ProgramComparisonPipeline.namedDaemonThreads("fetch"));
+        ExecutorService diffPool = Executors.newFixedThreadPool(diffParallelism, ProgramComparisonPipeline.namedDaemonThreads("diff"));
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long started = System.currentTimeMillis();
+                try {
+                    runCycle(fetchPool, diffPool);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println(LocalDateTime.now() + " cycle " + cycle + " failed");
+                    e.printStackTrace();
+                }
+                Thread.sleep(Math.max(0, interval - (System.currentTimeMillis() - started)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            fetchPool.shutdownNow();
+            diffPool.shutdownNow();
+        }
+    }
+
+    void runCycle(ExecutorService fetchPool, ExecutorService diffPool) throws IOException {
+        cycle++;
+        CompletableFuture<List<List<String>>> programListSource = supplyAsync(() -> ProgramComparisonPipeline.getPrograms(env1, env1URL), fetchPool);
+        CompletableFuture<List<List<String>>> programListTarget = supplyAsync(() -> ProgramComparisonPipeline.getPrograms(env2, env2URL), fetchPool);
+        List<ProgramPair> pairs = ProgramComparisonPipeline.joinByName(
+                ProgramComparisonPipeline.join(programListSource), ProgramComparisonPipeline.join(programListTarget));
+
+        Map<String, ProgramState> nextStates = new LinkedHashMap<>();
+        CycleTotals totals = new CycleTotals();
+        ProgramComparisonPipeline.runInOrder(pairs.size(), window,
+                submitted -> submit(pairs.get(submitted), states.get(pairs.get(submitted).nameKey()), fetchPool, diffPool),
+                (result, emitted) -> emit(pairs.get(emitted), result, nextStates, totals));
+        for (Map.Entry<String, ProgramState> state : states.entrySet()) {
+            if(!nextStates.containsKey(state.getKey())) {
+                totals.removed++;
+                reportResolved(state.getValue().programName + " - resolved drift, no longer listed", state.getValue().diffs);
+                totals.resolvedDrift += state.getValue().diffs.size();
+            }
+        }
+        states.clear();
+        states.putAll(nextStates);
+
+        System.err.println(LocalDateTime.now() + " cycle " + cycle + ": " + pairs.size() + " programs, " + totals.changed
+                + " changed, " + totals.removed + " no longer listed, " + totals.newDrift + " new diffs, "
+                + totals.resolvedDrift + " resolved diffs");
+    }
+
+    /**
+     * Reports how a program moved since the previous cycle and records its state for the next one.
+     */
+    private void emit(ProgramPair pair, CompletableFuture<ProgramState> result, Map<String, ProgramState> nextStates,
+                      CycleTotals totals) {
+        String key = pair.nameKey();
+        ProgramState previous = states.get(key);
+        ProgramState current;
+        try {
+            current = result.join();
+        } catch (CompletionException e) {
+            reporter.programFailed(pair.programName, e.getCause());
+            if(!isNull(previous)) {
+                nextStates.put(key, previous);
+            }
+            return;
+        }
+        if(current == previous) {
+            nextStates.put(key, previous);
+            return;
+        }
+        nextStates.put(key, current.retained());
+
+        totals.changed++;
+        if(isNull(previous)) {
+            report(pair.programName, current.diffs);
+            totals.newDrift += current.diffs.size();
+        } else {
+            DiffCollector appeared = current.diffs.minus(previous.fingerprints, previous.diffs.getTruncation());
+            DiffCollector resolved = previous.diffs.minus(current.fingerprints, current.diffs.getTruncation());
+            report(pair.programName + " - new drift", appeared);
+            reportResolved(pair.programName + " - resolved drift", resolved);
+            totals.newDrift += appeared.size();
+            totals.resolvedDrift += resolved.size();
+        }
+    }
+
+    /**
+     * Fetches both payloads of a program and compares them, unless they hash the same as in the previous cycle,
+     * in which case the previous state itself is the result.
+     */
+    private CompletableFuture<ProgramState> submit(ProgramPair pair, ProgramState previous,
+                                                   ExecutorService fetchPool, ExecutorService diffPool) {
+        String srcProgramId = pair.srcProgramId;
+        String destProgramId = pair.destProgramId;
+        CompletableFuture<byte[]> srcJson = supplyAsync(() -> ProgramComparisonPipeline.fetchJson(env1, env1URL, srcProgramId), fetchPool);
+        CompletableFuture<byte[]> destJson = supplyAsync(() -> ProgramComparisonPipeline.fetchJson(env2, env2URL, destProgramId), fetchPool);
+        return srcJson.thenCombineAsync(destJson, (jsonOne, jsonTwo) -> {
+            String srcHash = SnapshotStore.sha256(jsonOne);
+            String destHash = SnapshotStore.sha256(jsonTwo);
+            if(!isNull(previous) && previous.srcHash.equals(srcHash) && previous.destHash.equals(destHash)) {
+                return previous;
+            }
+            DiffCollector diffs = new DiffCollector();
+            try {
+                CompareJsons.compareJsons(jsonOne, jsonTwo, diffs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new ProgramState(pair.programName, srcHash, destHash, diffs);
+        }, diffPool);
+    }
+
+    private void reportResolved(String title, DiffCollector diffs) {
+        if(reportResolved) {
+            report(title, diffs);
+        }
+    }
+
+    private void report(String title, DiffCollector diffs) {
+        if(diffs.size() == 0) {
+            return;
+        }
+        reporter.startProgram(title);
+        diffs.replayTo(reporter);
+        reporter.endProgram();
+    }
+
+    /**
+     * What changed in a cycle, for the line summing it up.
+     */
+    private static final class CycleTotals {
+
+        private int changed, removed, newDrift, resolvedDrift;
+    }
+
+    /**
+     * A program as last compared. The diffs of a state kept between cycles have no destination nodes.
+     */
+    private static final class ProgramState {
+
+        private final String programName, srcHash, destHash;
+
+        private final DiffCollector diffs;
+
+        private final long[] fingerprints;
+
+        private ProgramState(String programName, String srcHash, String destHash, DiffCollector diffs) {
+            this(programName, srcHash, destHash, diffs, diffs.fingerprints());
+        }
+
+        private ProgramState(String programName, String srcHash, String destHash, DiffCollector diffs, long[] fingerprints) {
+            this.programName = programName;
+            this.srcHash = srcHash;
+            this.destHash = destHash;
+            this.diffs = diffs;
+            this.fingerprints = fingerprints;
+        }
+
+        /**
+         * The state to keep until the next cycle, once the diffs have been reported.
+         */
+        private ProgramState retained() {
+            return new ProgramState(programName, srcHash, destHash, diffs.withoutDestNodes(), fingerprints);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.mams.comparator.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+
+/**
+ * Persistent store of fetched payloads, so that repeated comparisons cost disk reads instead of downloads.
+ *
+ * Payloads are content addressed: {@code objects/<sha-256>.json} holds each distinct payload once. Every fetch
+ * records which payload an environment served for a key (a program id, or "programs" for the program list) on
+ * a given day in {@code index/<env>/<yyyy-MM-dd>/<key>.properties}, together with the ETag and Last-Modified
+ * headers of the response. Later fetches revalidate with If-None-Match / If-Modified-Since and reuse the stored
+ * payload on 304 Not Modified. Older days stay readable, which allows an environment to be compared against an
+ * earlier snapshot of itself without any network access.
+ *
+ * Payloads are evicted least recently used first once the objects exceed the configured size. A payload handed
+ * out by fetch or read is pinned until the caller releases it, so a comparison never loses a payload it is about
+ * to read, while a long running process (watch mode, the comparison server) still keeps within the size. The
+ * index entries of evicted payloads are pruned with them, so the latest snapshot of a key is then the latest
+ * one still stored.
+ */
+final class SnapshotStore {
+
+    private static final String HASH = "hash", ETAG = "etag", LAST_MODIFIED = "lastModified", URL = "url";
+
+    private final Path objects, index;
+
+    private final long maxBytes;
+
+    private final Map<String, Integer> pins = new HashMap<>();
+
+    private long totalBytes;
+
+    SnapshotStore(Path directory, long maxBytes) throws IOException {
+        this.objects = Files.createDirectories(directory.resolve("objects"));
+        this.index = Files.createDirectories(directory.resolve("index"));
+        this.maxBytes = maxBytes;
+        try (DirectoryStream<Path> payloads = Files.newDirectoryStream(objects)) {
+            for (Path payload : payloads) {
+                totalBytes += Files.size(payload);
+            }
+        }
+    }
+
+    /**
+     * Payload served by the environment for the key, revalidating the latest stored snapshot with a conditional
+     * GET and storing the response when it changed. The payload is pinned until {@link #release}d.
+     */
+    Path fetch(String env, String key, String url) throws IOException {
+        Properties latest = readEntry(env, key, null);
+        Path cached = isNull(latest) ? null : objects.resolve(latest.getProperty(HASH) + ".json");
+        Map<String, String> headers = new HashMap<>();
+        if(nonNull(cached) && Files.exists(cached)) {
+            if(!isEmpty(latest.getProperty(ETAG))) {
+                headers.put("If-None-Match", latest.getProperty(ETAG));
+            }
+            if(!isEmpty(latest.getProperty(LAST_MODIFIED))) {
+                headers.put("If-Modified-Since", latest.getProperty(LAST_MODIFIED));
+            }
+        }
+
+        try (HttpTransport.Response response = CompareJsons.get(url, headers)) {
+            if(response.getStatusCode() == 304 && !headers.isEmpty()) {
+                if(isNull(pin(cached))) {
+                    return fetch(env, key, url);
+                }
+                writeEntry(env, key, latest);
+                return cached;
+            }
+            if(response.getStatusCode() != 200) {
+                throw new IOException("GET " + url + " returned " + response.getStatusLine());
+            }
+
+            Properties entry = new Properties();
+            entry.setProperty(HASH, store(response.asByteArray()));
+            entry.setProperty(URL, url);
+            if(!isEmpty(response.getHeader("ETag"))) {
+                entry.setProperty(ETAG, response.getHeader("ETag"));
+            }
+            if(!isEmpty(response.getHeader("Last-Modified"))) {
+                entry.setProperty(LAST_MODIFIED, response.getHeader("Last-Modified"));
+            }
+            writeEntry(env, key, entry);
+            return objects.resolve(entry.getProperty(HASH) + ".json");
+        }
+    }
+
+    /**
+     * Stored payload of the environment for the key, as of the given day (yyyy-MM-dd) or, when day is null, the
+     * latest one. The payload is pinned until {@link #release}d.
+     */
+    Path read(String env, String key, String day) throws IOException {
+        Properties entry = readEntry(env, key, day);
+        if(isNull(entry)) {
+            throw new NoSuchFileException("No snapshot of " + key + " for " + env + (isNull(day) ? "" : "@" + day));
+        }
+        Path payload = pin(objects.resolve(entry.getProperty(HASH) + ".json"));
+        if(isNull(payload)) {
+            throw new NoSuchFileException("Snapshot of " + key + " for " + env + " was evicted");
+        }
+        return payload;
+    }
+
+    /**
+     * Lets a payload returned by fetch or read be evicted again, once it has been read.
+     */
+    synchronized void release(Path payload) {
+        pins.computeIfPresent(hash(payload), (hash, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Marks a payload as used and keeps it from being evicted, or returns null when it is already gone.
+     */
+    private synchronized Path pin(Path payload) throws IOException {
+        if(!Files.exists(payload)) {
+            return null;
+        }
+        pins.merge(hash(payload), 1, Integer::sum);
+        return touch(payload);
+    }
+
+    private Properties readEntry(String env, String key, String day) throws IOException {
+        Path envIndex = index.resolve(fileName(env));
+        if(!Files.isDirectory(envIndex)) {
+            return null;
+        }
+        List<String> days = new ArrayList<>();
+        if(nonNull(day)) {
+            days.add(day);
+        } else {
+            try (DirectoryStream<Path> dayDirectories = Files.newDirectoryStream(envIndex)) {
+                dayDirectories.forEach(dayDirectory -> days.add(dayDirectory.getFileName().toString()));
+            }
+            days.sort(Collections.reverseOrder());
+        }
+        for (String candidate : days) {
+            Path entryFile = envIndex.resolve(candidate).resolve(fileName(key) + ".properties");
+            if(Files.exists(entryFile)) {
+                Properties entry = new Properties();
+                try (InputStream in = Files.newInputStream(entryFile)) {
+                    entry.load(in);
+                }
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void writeEntry(String env, String key, Properties entry) throws IOException {
+        Path dayIndex = Files.createDirectories(index.resolve(fileName(env)).resolve(LocalDate.now().toString()));
+        Path temp = Files.createTempFile(dayIndex, fileName(key), ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            entry.store(out, null);
+        }
+        Files.move(temp, dayIndex.resolve(fileName(key) + ".properties"), REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * Stores a payload, pinned for the caller, and returns its hash.
+     */
+    private synchronized String store(byte[] payload) throws IOException {
+        String hash = sha256(payload);
+        Path target = objects.resolve(hash + ".json");
+        pins.merge(hash, 1, Integer::sum);
+        if(!Files.exists(target)) {
+            Path temp = Files.createTempFile(objects, hash, ".tmp");
+            Files.write(temp, payload);
+            Files.move(temp, target, ATOMIC_MOVE);
+            totalBytes += payload.length;
+            evictIfRequired();
+        } else {
+            touch(target);
+        }
+        return hash;
+    }
+
+    private void evictIfRequired() throws IOException {
+        if(totalBytes <= maxBytes) {
+            return;
+        }
+        List<Path> payloads = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(objects, "*.json")) {
+            stream.forEach(payloads::add);
+        }
+        Map<Path, FileTime> lastUsed = new HashMap<>();
+        for (Path payload : payloads) {
+            lastUsed.put(payload, Files.getLastModifiedTime(payload));
+        }
+        payloads.sort((one, two) -> lastUsed.get(one).compareTo(lastUsed.get(two)));
+        Set<String> evicted = new HashSet<>();
+        for (Path payload : payloads) {
+            if(totalBytes <= maxBytes) {
+                break;
+            }
+            if(pins.containsKey(hash(payload))) {
+                continue;
+            }
+            totalBytes -= Files.size(payload);
+            Files.deleteIfExists(payload);
+            evicted.add(hash(payload));
+        }
+        if(!evicted.isEmpty()) {
+            prune(evicted);
+        }
+    }
+
+    /**
+     * Deletes the index entries of the evicted payloads, and the past days left without entries. Entries are only
+     * written for the current day.
+     */
+    private void prune(Set<String> evicted) throws IOException {
+        List<Path> entryFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(index)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".properties")).forEach(entryFiles::add);
+        }
+        for (Path entryFile : entryFiles) {
+            Properties entry = new Properties();
+            try (InputStream in = Files.newInputStream(entryFile)) {
+                entry.load(in);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            if(!evicted.contains(entry.getProperty(HASH))) {
+                continue;
+            }
+            Files.deleteIfExists(entryFile);
+            Path day = entryFile.getParent();
+            if(!day.getFileName().toString().equals(LocalDate.now().toString())) {
+                try (DirectoryStream<Path> remaining = Files.newDirectoryStream(day)) {
+                    if(!remaining.iterator().hasNext()) {
+                        Files.deleteIfExists(day);
+                    }
+                } catch (NoSuchFileException | DirectoryNotEmptyException ignored) {
+                    // removed concurrently
+                }
+            }
+        }
+    }
+
+    private static String hash(Path payload) {
+        String fileName = payload.getFileName().toString();
+        return fileName.substring(0, fileName.length() - ".json".length());
+    }
+
+    /**
+     * Marks a payload as used, the modification time of the object files drives the LRU eviction.
+     */
+    private static Path touch(Path payload) throws IOException {
+        Files.setLastModifiedTime(payload, FileTime.fromMillis(System.currentTimeMillis()));
+        return payload;
+    }
+
+    private static String fileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    static String sha256(byte[] payload) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(payload)) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
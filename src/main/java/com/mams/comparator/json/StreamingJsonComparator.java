@@ -0,0 +1,138 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Compares two documents token by token without materializing either of them as a tree.
+ *
+ * Both parsers are walked in lockstep, one object level at a time. Nested objects present on both sides are
+ * compared while streaming, properties that are not configured for comparison are skipped, and only the
+ * values that need the tree based rules are read into {@link JsonNode}s: scalars, configured arrays (which need
+ * keyed matching) and properties that appear in a different order or type on the destination side. Memory is
+ * therefore bounded by the largest buffered array rather than by the document size.
+ *
+ * Diffs are passed to the reporter as soon as they are known, with the same paths and order as
+ * {@link CompareJsons#compareObject}: array differences of an object are held back until its other
+ * differences have been reported, and counted in a context forked for them, so that they take their share of
+ * compare.max.diffs in that order too. Once the budget of the context is exhausted the rest of both documents is
+ * skipped without being compared.
+ */
+final class StreamingJsonComparator {
+
+    private final ComparisonPlan comparisonPlan;
+
+    private final ComparisonContext context;
+
+    private final DiffReporter reporter;
+
+    StreamingJsonComparator(ComparisonPlan comparisonPlan, ComparisonContext context, DiffReporter reporter) {
+        this.comparisonPlan = comparisonPlan;
+        this.context = context;
+        this.reporter = reporter;
+    }
+
+    void compare(JsonParser srcParser, JsonParser destParser) throws IOException {
+        JsonToken srcToken = srcParser.nextToken();
+        JsonToken destToken = destParser.nextToken();
+        if(srcToken == START_OBJECT && destToken == START_OBJECT) {
+            compareObject(srcParser, destParser, comparisonPlan, DiffPath.ROOT);
+        } else if(nonNull(srcToken)) {
+            JsonNode srcJsonNode = srcParser.readValueAsTree();
+            JsonNode destJsonNode = isNull(destToken) ? null : destParser.readValueAsTree();
+            CompareJsons.compareObject(srcJsonNode, destJsonNode, comparisonPlan, DiffPath.ROOT, context, reporter);
+        }
+    }
+
+    /**
+     * Compares the objects both parsers are positioned on (START_OBJECT) and leaves them on the matching
+     * END_OBJECT. Destination properties read ahead of their source counterpart are kept until it shows up.
+     */
+    private void compareObject(JsonParser srcParser, JsonParser destParser, ComparisonPlan plan, DiffPath path)
+            throws IOException {
+        if(!plan.hasFieldsToCompare()) {
+            CompareJsons.warnUnconfigured(path);
+        }
+        Map<String, JsonNode> destReadAhead = new HashMap<>();
+        DiffCollector arrayDiffs = new DiffCollector();
+        ComparisonContext arrayContext = context.fork();
+        boolean destExhausted = false;
+
+        while (srcParser.nextToken() == FIELD_NAME) {
+            String fieldName = srcParser.getCurrentName();
+            JsonToken srcToken = srcParser.nextToken();
+            if(!plan.isPropertyNeededForComparision(fieldName) || context.isExhausted()) {
+                srcParser.skipChildren();
+                continue;
+            }
+            ComparisonPlan fieldPlan = plan.child(fieldName);
+
+            boolean destPositioned = false;
+            JsonNode destProp = destReadAhead.remove(fieldName);
+            while (isNull(destProp) && !destExhausted) {
+                if(destParser.nextToken() != FIELD_NAME) {
+                    destExhausted = true;
+                    break;
+                }
+                String destFieldName = destParser.getCurrentName();
+                destParser.nextToken();
+                if(fieldName.equals(destFieldName)) {
+                    destPositioned = true;
+                    break;
+                } else if(plan.isPropertyNeededForComparision(destFieldName)) {
+                    destReadAhead.put(destFieldName, destParser.readValueAsTree());
+                } else {
+                    destParser.skipChildren();
+                }
+            }
+
+            if(destPositioned) {
+                JsonToken destToken = destParser.getCurrentToken();
+                if(srcToken == START_OBJECT && destToken == START_OBJECT && !context.isTooDeep(path.field(fieldName))) {
+                    context.nodeVisited();
+                    compareObject(srcParser, destParser, fieldPlan, path.field(fieldName));
+                    continue;
+                }
+                if((srcToken == START_ARRAY || destToken == START_ARRAY) && isNull(fieldPlan.getMatchingPropertyName())) {
+                    context.nodeVisited();
+                    srcParser.skipChildren();
+                    destParser.skipChildren();
+                    continue;
+                }
+                destProp = destParser.readValueAsTree();
+            }
+            compareProperty(srcParser.readValueAsTree(), destProp, fieldPlan, path, fieldName, arrayContext, arrayDiffs);
+        }
+
+        if(!destExhausted) {
+            while (destParser.nextToken() == FIELD_NAME) {
+                destParser.nextToken();
+                destParser.skipChildren();
+            }
+        }
+        arrayDiffs.replayTo(reporter, context);
+        context.add(arrayContext);
+    }
+
+    private void compareProperty(JsonNode srcProp, JsonNode destProp, ComparisonPlan plan, DiffPath path, String fieldName,
+                                 ComparisonContext arrayContext, DiffCollector arrayDiffs) {
+        List<CompareJsons.ArrayProperty> arrayProperties = new ArrayList<>();
+        CompareJsons.compareProperty(srcProp, destProp, plan, path, fieldName, arrayProperties, context, reporter);
+        CompareJsons.compareArrayProperties(arrayProperties, arrayContext, arrayDiffs);
+        context.releaseFingerprints();
+        arrayContext.releaseFingerprints();
+    }
+}
@@ -0,0 +1,83 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static java.util.Objects.isNull;
+
+/**
+ * 64-bit structural fingerprints of the object and array nodes of the documents being compared, kept in a side
+ * table keyed by node identity.
+ *
+ * A fingerprint is computed bottom-up the first time a subtree is looked at and reused afterwards, so every
+ * node is hashed once per comparison. Fingerprints agree with {@link JsonNode#equals(Object)}: object fields
+ * are combined independently of their order, array elements in order. Two subtrees with different
+ * fingerprints are therefore known to differ without walking them; equal fingerprints are confirmed with a
+ * full compare to guard against collisions.
+ *
+ * Nodes of a {@link JsonTape} carry their fingerprints already, computed the same way when the tape was read.
+ * Scalars hash differently there, so only fingerprints of nodes read the same way are compared.
+ */
+final class SubtreeFingerprints {
+
+    static final long OBJECT_SEED = 0x9E3779B97F4A7C15L;
+
+    static final long ARRAY_SEED = 0xC2B2AE3D27D4EB4FL;
+
+    private final Map<JsonNode, Long> fingerprints = new IdentityHashMap<>();
+
+    boolean areEqual(JsonNode srcJsonNode, JsonNode destJsonNode) {
+        if(srcJsonNode == destJsonNode) {
+            return true;
+        }
+        if(isNull(srcJsonNode) || isNull(destJsonNode)) {
+            return false;
+        }
+        if(srcJsonNode.isContainerNode() && destJsonNode.isContainerNode()
+                && srcJsonNode instanceof TapeNode == destJsonNode instanceof TapeNode
+                && fingerprint(srcJsonNode) != fingerprint(destJsonNode)) {
+            return false;
+        }
+        return srcJsonNode.equals(destJsonNode);
+    }
+
+    long fingerprint(JsonNode node) {
+        if(node instanceof TapeNode) {
+            return ((TapeNode) node).fingerprint();
+        }
+        if(!node.isContainerNode()) {
+            return mix(((long) node.getNodeType().ordinal() << 32) ^ node.hashCode());
+        }
+        Long fingerprint = fingerprints.get(node);
+        if(fingerprint != null) {
+            return fingerprint;
+        }
+        long hash;
+        if(node.isArray()) {
+            hash = ARRAY_SEED;
+            for (JsonNode element : node) {
+                hash = mix(hash ^ fingerprint(element)) * 31;
+            }
+        } else {
+            hash = OBJECT_SEED;
+            for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                hash += mix(mix(field.getKey().hashCode()) ^ fingerprint(field.getValue()));
+            }
+        }
+        fingerprints.put(node, hash);
+        return hash;
+    }
+
+    /**
+     * The splitmix64 finalizer.
+     */
+    static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
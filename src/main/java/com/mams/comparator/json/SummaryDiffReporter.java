@@ -0,0 +1,147 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mams.comparator.json.CompareJsons.DiffModes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Writes how many diffs each program has per top-level field and kind of difference instead of the diffs
+ * themselves, for gating runs that only need to know whether programs differ and roughly where:
+ * <pre>
+ * Know Your Numbers
+ *   Field                                         ADDED   MODIFIED    DELETED
+ *   activities                                        3         10          0
+ *   name                                              0          1          0
+ *   Total                                             3         11          0
+ *   Truncated: limit of 1000 diffs reached
+ * </pre>
+ * with a MIXED column when comparing more than two environments. Fields are listed in the order their first
+ * diff was reported.
+ */
+final class SummaryDiffReporter implements MatrixDiffReporter {
+
+    private static final String NEW_LINE = System.lineSeparator();
+
+    private final Writer out;
+
+    private final List<String> columns = new ArrayList<>();
+
+    private final Map<String, int[]> counts = new LinkedHashMap<>();
+
+    private String programName, truncation;
+
+    SummaryDiffReporter(Writer out, String... envs) {
+        this.out = out;
+        for (DiffModes mode : DiffModes.values()) {
+            columns.add(mode.name());
+        }
+        if(envs.length > 2) {
+            columns.add(EnvironmentMatrix.MIXED);
+        }
+    }
+
+    @Override
+    public void startProgram(String programName) {
+        this.programName = programName;
+        this.truncation = null;
+        counts.clear();
+    }
+
+    @Override
+    public void diff(DiffPath path, String srcValue, String destValue, DiffModes mode, JsonNode destNode) {
+        count(path, mode.ordinal());
+    }
+
+    @Override
+    public void diff(DiffPath path, String[] values, String diff) {
+        count(path, columns.indexOf(diff));
+    }
+
+    @Override
+    public void truncated(String reason) {
+        truncation = reason;
+    }
+
+    @Override
+    public void endProgram() {
+        try {
+            if(!isNull(programName)) {
+                out.write(programName);
+                out.write(NEW_LINE);
+            }
+            if(counts.isEmpty()) {
+                out.write("  No differences");
+                out.write(NEW_LINE);
+            } else {
+                int[] total = new int[columns.size()];
+                writeRow("Field", columns.toArray());
+                counts.forEach((field, fieldCounts) -> {
+                    for (int i = 0; i < total.length; i++) {
+                        total[i] += fieldCounts[i];
+                    }
+                    writeRow(field, toObjects(fieldCounts));
+                });
+                writeRow("Total", toObjects(total));
+            }
+            if(!isNull(truncation)) {
+                out.write("  Truncated: " + truncation);
+                out.write(NEW_LINE);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void programFailed(String programName, Throwable cause) {
+        try {
+            out.write(programName);
+            out.write(NEW_LINE);
+            out.write("  Failed: " + cause);
+            out.write(NEW_LINE);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        cause.printStackTrace();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void count(DiffPath path, int column) {
+        counts.computeIfAbsent(path.getTopLevelName(), field -> new int[columns.size()])[column]++;
+    }
+
+    private void writeRow(String field, Object[] cells) {
+        StringBuilder row = new StringBuilder(String.format("  %-40s", field));
+        for (Object cell : cells) {
+            row.append(String.format(" %10s", cell));
+        }
+        try {
+            out.write(row.append(NEW_LINE).toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Object[] toObjects(int[] counts) {
+        Object[] objects = new Object[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            objects[i] = counts[i];
+        }
+        return objects;
+    }
+}
@@ -0,0 +1,206 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mams.comparator.json.CompareJsons.DiffModes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Renders diffs as the ASCII table, one row per diff:
+ * <pre>
+ * |    Property    |    env1    |    env2    |  Diff  |
+ * </pre>
+ * with a value column per environment when comparing more than two. Values longer than their column wrap onto
+ * further lines, continued with a '-'. Each line is assembled in a reusable char buffer and written with a
+ * single call.
+ */
+final class TableDiffReporter implements MatrixDiffReporter {
+
+    private static final int TOTAL_WIDTH = 150;
+
+    private static final int OPERATION_COLUMN_WIDTH = 16;
+
+    private static final int PROPERTY_WIDTH = TOTAL_WIDTH / 3 - 2, VALUE_WIDTH = TOTAL_WIDTH / 3 - 1,
+            OPERATION_WIDTH = OPERATION_COLUMN_WIDTH - 1;
+
+    private static final String NEW_LINE = System.lineSeparator();
+
+    private final Writer out;
+
+    private final String[] envs, values;
+
+    private final char[] line, headerRule, rowRule;
+
+    TableDiffReporter(Writer out, String... envs) {
+        this.out = out;
+        this.envs = envs;
+        this.values = new String[envs.length];
+        int width = 1 + PROPERTY_WIDTH + 1 + envs.length * (VALUE_WIDTH + 1) + OPERATION_WIDTH + 1;
+        this.line = new char[2 * width];
+        this.headerRule = rule('*', width);
+        this.rowRule = rule('-', width);
+    }
+
+    @Override
+    public void startProgram(String programName) {
+        if(!isNull(programName)) {
+            printBanner(programName);
+        }
+        printRow("Property", envs, "Diff", true);
+    }
+
+    @Override
+    public void diff(DiffPath path, String srcValue, String destValue, DiffModes mode, JsonNode destNode) {
+        values[0] = srcValue;
+        values[1] = destValue;
+        printRow(path.getKey(), values, mode.toString(), false);
+    }
+
+    @Override
+    public void diff(DiffPath path, String[] values, String diff) {
+        printRow(path.getKey(), values, diff, false);
+    }
+
+    /**
+     * Adds a row with the reason, marked TRUNCATED.
+     */
+    @Override
+    public void truncated(String reason) {
+        Arrays.fill(values, null);
+        printRow(reason, values, "TRUNCATED", false);
+    }
+
+    @Override
+    public void endProgram() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void programFailed(String programName, Throwable cause) {
+        printBanner(programName);
+        endProgram();
+        cause.printStackTrace();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void printBanner(String programName) {
+        try {
+            out.write("\n\n\n");
+            out.write(NEW_LINE);
+            out.write("~~~~~~~~~~~~~ Processing Program: " + programName + " ~~~~~~~~~~~~~");
+            out.write(NEW_LINE);
+            out.write(NEW_LINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void printRow(String property, String[] columnTexts, String operation, boolean isHeader) {
+        property = isNull(property) ? "" : property;
+
+        int noOfRows = getNoOfRowsRequired(TOTAL_WIDTH / 3 - 4, property.length());
+        for (String columnText : columnTexts) {
+            noOfRows = Math.max(noOfRows, getNoOfRowsRequired(TOTAL_WIDTH / 3 - 3, isNull(columnText) ? 0 : columnText.length()));
+        }
+        try {
+            if(isHeader) {
+                out.write(headerRule);
+                out.write(NEW_LINE);
+            }
+            for (int row = 0; row < noOfRows; row++) {
+                int length = 0;
+                line[length++] = '|';
+                length = appendCell(property, PROPERTY_WIDTH, row, isHeader, length);
+                line[length++] = '|';
+                for (String columnText : columnTexts) {
+                    length = appendCell(isNull(columnText) ? "" : columnText, VALUE_WIDTH, row, isHeader, length);
+                    line[length++] = '|';
+                }
+                length = appendCell(operation, OPERATION_WIDTH, row, true, length);
+                line[length++] = '|';
+                out.write(line, 0, length);
+                out.write(NEW_LINE);
+            }
+            out.write(isHeader ? headerRule : rowRule);
+            out.write(NEW_LINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends the given line of a cell of the given width to the buffer. Text shorter than the cell sits on its
+     * first line, padded by at least one space on both sides; longer text is split into chunks of width - 3
+     * characters ending with '-', the last chunk padded instead.
+     */
+    private int appendCell(String text, int width, int row, boolean isCenterAligned, int length) {
+        int textLength = text.length();
+        if(textLength < width) {
+            if(row > 0) {
+                return fill(width, length);
+            }
+            int leftPaddingSize = (width - textLength) / 2 - 1;
+            int rightPaddingSize = width - textLength - (width - textLength) / 2 - 1;
+            if(!isCenterAligned) {
+                rightPaddingSize += leftPaddingSize;
+                leftPaddingSize = 0;
+            }
+            length = fill(leftPaddingSize, length);
+            line[length++] = ' ';
+            text.getChars(0, textLength, line, length);
+            length += textLength;
+            line[length++] = ' ';
+            return fill(rightPaddingSize, length);
+        }
+
+        int chunkSize = width - 3;
+        int start = row * chunkSize;
+        if(start >= textLength) {
+            return fill(width, length);
+        }
+        line[length++] = ' ';
+        if(textLength - start > chunkSize) {
+            text.getChars(start, start + chunkSize, line, length);
+            length += chunkSize;
+            line[length++] = '-';
+        } else {
+            text.getChars(start, textLength, line, length);
+            length += textLength - start;
+            length = fill(width - 2 - (textLength - start), length);
+        }
+        line[length++] = ' ';
+        return length;
+    }
+
+    private int fill(int count, int length) {
+        if(count <= 0) {
+            return length;
+        }
+        Arrays.fill(line, length, length + count, ' ');
+        return length + count;
+    }
+
+    private static int getNoOfRowsRequired(int columnWidth, int textWidth) {
+        int mod = textWidth % columnWidth;
+        return mod > 0 ? Math.max(1, textWidth / columnWidth + 1) : 1;
+    }
+
+    private static char[] rule(char c, int width) {
+        char[] rule = new char[width];
+        Arrays.fill(rule, c);
+        return rule;
+    }
+}
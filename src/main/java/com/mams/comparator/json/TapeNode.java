@@ -0,0 +1,496 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.NumberInput;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BaseJsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * A node of a {@link JsonTape}, so that the comparator and the reporters work on tapes as on Jackson trees.
+ * A view holds nothing but its tape and position: it is created when a node is reached and can be dropped
+ * right after, two views of the same node being equal. Since a view keeps its whole tape reachable, the diffs
+ * and paths that outlive a comparison hold a Jackson copy of their nodes instead, see {@link #detach}.
+ *
+ * Navigation, scalar values, equality and serialization read the tape directly. The find methods, which the
+ * comparator does not use, go through a Jackson copy of the node.
+ */
+final class TapeNode extends BaseJsonNode {
+
+    private final JsonTape tape;
+
+    private final int node;
+
+    TapeNode(JsonTape tape, int node) {
+        this.tape = tape;
+        this.node = node;
+    }
+
+    /**
+     * The structural hash of the subtree, which stands in for its {@link SubtreeFingerprints} fingerprint.
+     */
+    long fingerprint() {
+        return tape.hash(node);
+    }
+
+    @Override
+    public JsonNodeType getNodeType() {
+        switch (tape.type(node)) {
+            case JsonTape.OBJECT:
+                return JsonNodeType.OBJECT;
+            case JsonTape.ARRAY:
+                return JsonNodeType.ARRAY;
+            case JsonTape.STRING:
+                return JsonNodeType.STRING;
+            case JsonTape.TRUE:
+            case JsonTape.FALSE:
+                return JsonNodeType.BOOLEAN;
+            case JsonTape.NULL:
+                return JsonNodeType.NULL;
+            default:
+                return JsonNodeType.NUMBER;
+        }
+    }
+
+    @Override
+    public boolean isObject() {
+        return tape.type(node) == JsonTape.OBJECT;
+    }
+
+    @Override
+    public boolean isArray() {
+        return tape.type(node) == JsonTape.ARRAY;
+    }
+
+    @Override
+    public JsonToken asToken() {
+        switch (tape.type(node)) {
+            case JsonTape.OBJECT:
+                return JsonToken.START_OBJECT;
+            case JsonTape.ARRAY:
+                return JsonToken.START_ARRAY;
+            case JsonTape.STRING:
+                return JsonToken.VALUE_STRING;
+            case JsonTape.DOUBLE:
+                return JsonToken.VALUE_NUMBER_FLOAT;
+            case JsonTape.TRUE:
+                return JsonToken.VALUE_TRUE;
+            case JsonTape.FALSE:
+                return JsonToken.VALUE_FALSE;
+            case JsonTape.NULL:
+                return JsonToken.VALUE_NULL;
+            default:
+                return JsonToken.VALUE_NUMBER_INT;
+        }
+    }
+
+    @Override
+    public JsonParser.NumberType numberType() {
+        switch (tape.type(node)) {
+            case JsonTape.INT:
+                return JsonParser.NumberType.INT;
+            case JsonTape.LONG:
+                return JsonParser.NumberType.LONG;
+            case JsonTape.BIG_INTEGER:
+                return JsonParser.NumberType.BIG_INTEGER;
+            case JsonTape.DOUBLE:
+                return JsonParser.NumberType.DOUBLE;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public int size() {
+        return tape.size(node);
+    }
+
+    @Override
+    public JsonNode get(int index) {
+        int child = isArray() ? tape.element(node, index) : -1;
+        return child < 0 ? null : new TapeNode(tape, child);
+    }
+
+    @Override
+    public JsonNode get(String fieldName) {
+        int child = isObject() ? tape.field(node, fieldName) : -1;
+        return child < 0 ? null : new TapeNode(tape, child);
+    }
+
+    @Override
+    public JsonNode path(String fieldName) {
+        JsonNode child = get(fieldName);
+        return Objects.isNull(child) ? MissingNode.getInstance() : child;
+    }
+
+    @Override
+    public JsonNode path(int index) {
+        JsonNode child = get(index);
+        return Objects.isNull(child) ? MissingNode.getInstance() : child;
+    }
+
+    @Override
+    public Iterator<JsonNode> elements() {
+        return children(child -> new TapeNode(tape, child));
+    }
+
+    @Override
+    public Iterator<String> fieldNames() {
+        return isObject() ? children(tape::fieldName) : super.fieldNames();
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, JsonNode>> fields() {
+        return isObject() ? children(child -> new AbstractMap.SimpleImmutableEntry<>(tape.fieldName(child), new TapeNode(tape, child)))
+                : super.fields();
+    }
+
+    private <T> Iterator<T> children(IntFunction<T> view) {
+        return new Iterator<T>() {
+
+            private int child = tape.size(node) == 0 ? -1 : tape.firstChild(node);
+
+            @Override
+            public boolean hasNext() {
+                return child >= 0;
+            }
+
+            @Override
+            public T next() {
+                if(child < 0) {
+                    throw new NoSuchElementException();
+                }
+                T next = view.apply(child);
+                child = tape.nextSibling(node, child);
+                return next;
+            }
+        };
+    }
+
+    @Override
+    public String asText() {
+        return isContainerNode() ? "" : tape.scalarText(node);
+    }
+
+    @Override
+    public String textValue() {
+        return isTextual() ? tape.scalarText(node) : null;
+    }
+
+    @Override
+    public boolean booleanValue() {
+        return tape.type(node) == JsonTape.TRUE;
+    }
+
+    @Override
+    public Number numberValue() {
+        switch (tape.type(node)) {
+            case JsonTape.INT:
+                return Integer.valueOf(tape.scalarText(node));
+            case JsonTape.LONG:
+                return Long.valueOf(tape.scalarText(node));
+            case JsonTape.BIG_INTEGER:
+                return new BigInteger(tape.scalarText(node));
+            case JsonTape.DOUBLE:
+                return Double.valueOf(tape.scalarText(node));
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public boolean isIntegralNumber() {
+        byte type = tape.type(node);
+        return type == JsonTape.INT || type == JsonTape.LONG || type == JsonTape.BIG_INTEGER;
+    }
+
+    @Override
+    public boolean isFloatingPointNumber() {
+        return tape.type(node) == JsonTape.DOUBLE;
+    }
+
+    @Override
+    public boolean isInt() {
+        return tape.type(node) == JsonTape.INT;
+    }
+
+    @Override
+    public boolean isLong() {
+        return tape.type(node) == JsonTape.LONG;
+    }
+
+    @Override
+    public boolean isBigInteger() {
+        return tape.type(node) == JsonTape.BIG_INTEGER;
+    }
+
+    @Override
+    public boolean isDouble() {
+        return tape.type(node) == JsonTape.DOUBLE;
+    }
+
+    @Override
+    public boolean canConvertToInt() {
+        return isNumber() && (isInt() || isFloatingPointNumber() ? inRange(doubleValue(), Integer.MIN_VALUE, Integer.MAX_VALUE)
+                : bigIntegerValue().bitLength() < 32);
+    }
+
+    @Override
+    public boolean canConvertToLong() {
+        return isNumber() && (isFloatingPointNumber() ? inRange(doubleValue(), Long.MIN_VALUE, Long.MAX_VALUE)
+                : bigIntegerValue().bitLength() < 64);
+    }
+
+    private static boolean inRange(double value, double min, double max) {
+        return value >= min && value <= max;
+    }
+
+    @Override
+    public int intValue() {
+        return isNumber() ? numberValue().intValue() : 0;
+    }
+
+    @Override
+    public long longValue() {
+        return isNumber() ? numberValue().longValue() : 0L;
+    }
+
+    @Override
+    public double doubleValue() {
+        return isNumber() ? numberValue().doubleValue() : 0.0;
+    }
+
+    @Override
+    public BigInteger bigIntegerValue() {
+        return isIntegralNumber() ? new BigInteger(tape.scalarText(node)) : isNumber() ? decimalValue().toBigInteger() : BigInteger.ZERO;
+    }
+
+    @Override
+    public BigDecimal decimalValue() {
+        return isNumber() ? new BigDecimal(tape.scalarText(node)) : BigDecimal.ZERO;
+    }
+
+    @Override
+    public int asInt(int defaultValue) {
+        switch (tape.type(node)) {
+            case JsonTape.STRING:
+                return NumberInput.parseAsInt(tape.scalarText(node), defaultValue);
+            case JsonTape.TRUE:
+                return 1;
+            case JsonTape.FALSE:
+            case JsonTape.NULL:
+                return 0;
+            default:
+                return isNumber() ? intValue() : defaultValue;
+        }
+    }
+
+    @Override
+    public long asLong(long defaultValue) {
+        switch (tape.type(node)) {
+            case JsonTape.STRING:
+                return NumberInput.parseAsLong(tape.scalarText(node), defaultValue);
+            case JsonTape.TRUE:
+                return 1L;
+            case JsonTape.FALSE:
+            case JsonTape.NULL:
+                return 0L;
+            default:
+                return isNumber() ? longValue() : defaultValue;
+        }
+    }
+
+    @Override
+    public double asDouble(double defaultValue) {
+        switch (tape.type(node)) {
+            case JsonTape.STRING:
+                return NumberInput.parseAsDouble(tape.scalarText(node), defaultValue);
+            case JsonTape.TRUE:
+                return 1.0;
+            case JsonTape.FALSE:
+            case JsonTape.NULL:
+                return 0.0;
+            default:
+                return isNumber() ? doubleValue() : defaultValue;
+        }
+    }
+
+    @Override
+    public boolean asBoolean(boolean defaultValue) {
+        switch (tape.type(node)) {
+            case JsonTape.STRING:
+                String text = tape.scalarText(node).trim();
+                return "true".equals(text) || !"false".equals(text) && defaultValue;
+            case JsonTape.TRUE:
+                return true;
+            case JsonTape.FALSE:
+            case JsonTape.NULL:
+                return false;
+            default:
+                return isNumber() ? intValue() != 0 : defaultValue;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(o == this) {
+            return true;
+        }
+        if(o instanceof TapeNode) {
+            TapeNode other = (TapeNode) o;
+            return tape.equal(node, other.tape, other.node);
+        }
+        return o instanceof JsonNode && deepCopy().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = tape.hash(node);
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder json = new StringBuilder(isContainerNode() ? 16 + (size() << 4) : 16);
+        tape.appendJson(json, node);
+        return json.toString();
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        switch (tape.type(node)) {
+            case JsonTape.OBJECT:
+                generator.writeStartObject();
+                for (int child = tape.firstChild(node); child >= 0; child = tape.nextSibling(node, child)) {
+                    generator.writeFieldName(tape.fieldName(child));
+                    new TapeNode(tape, child).serialize(generator, provider);
+                }
+                generator.writeEndObject();
+                break;
+            case JsonTape.ARRAY:
+                generator.writeStartArray(size());
+                for (int child = tape.firstChild(node); child >= 0; child = tape.nextSibling(node, child)) {
+                    new TapeNode(tape, child).serialize(generator, provider);
+                }
+                generator.writeEndArray();
+                break;
+            case JsonTape.STRING:
+                generator.writeString(tape.scalarText(node));
+                break;
+            case JsonTape.INT:
+                generator.writeNumber(intValue());
+                break;
+            case JsonTape.LONG:
+                generator.writeNumber(longValue());
+                break;
+            case JsonTape.BIG_INTEGER:
+                generator.writeNumber(bigIntegerValue());
+                break;
+            case JsonTape.DOUBLE:
+                generator.writeNumber(doubleValue());
+                break;
+            case JsonTape.NULL:
+                generator.writeNull();
+                break;
+            default:
+                generator.writeBoolean(booleanValue());
+        }
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer)
+            throws IOException {
+        ((BaseJsonNode) deepCopy()).serializeWithType(generator, provider, typeSerializer);
+    }
+
+    /**
+     * The node itself, or a Jackson copy of it when it is a view of a tape, to be kept without keeping the
+     * whole document it belongs to.
+     */
+    static JsonNode detach(JsonNode node) {
+        return node instanceof TapeNode ? node.deepCopy() : node;
+    }
+
+    /**
+     * A Jackson tree of the node.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends JsonNode> T deepCopy() {
+        JsonNodeFactory factory = JsonNodeFactory.instance;
+        switch (tape.type(node)) {
+            case JsonTape.OBJECT:
+                ObjectNode object = factory.objectNode();
+                fields().forEachRemaining(field -> object.set(field.getKey(), field.getValue().deepCopy()));
+                return (T) object;
+            case JsonTape.ARRAY:
+                ArrayNode array = factory.arrayNode(size());
+                elements().forEachRemaining(element -> array.add(element.<JsonNode>deepCopy()));
+                return (T) array;
+            case JsonTape.STRING:
+                return (T) factory.textNode(tape.scalarText(node));
+            case JsonTape.INT:
+                return (T) factory.numberNode(intValue());
+            case JsonTape.LONG:
+                return (T) factory.numberNode(longValue());
+            case JsonTape.BIG_INTEGER:
+                return (T) factory.numberNode(bigIntegerValue());
+            case JsonTape.DOUBLE:
+                return (T) factory.numberNode(doubleValue());
+            case JsonTape.NULL:
+                return (T) factory.nullNode();
+            default:
+                return (T) factory.booleanNode(booleanValue());
+        }
+    }
+
+    @Override
+    protected JsonNode _at(JsonPointer pointer) {
+        return isObject() ? get(pointer.getMatchingProperty()) : get(pointer.getMatchingIndex());
+    }
+
+    @Override
+    public JsonNode findValue(String fieldName) {
+        return deepCopy().findValue(fieldName);
+    }
+
+    @Override
+    public JsonNode findParent(String fieldName) {
+        return deepCopy().findParent(fieldName);
+    }
+
+    @Override
+    public List<JsonNode> findValues(String fieldName, List<JsonNode> foundSoFar) {
+        return deepCopy().findValues(fieldName, foundSoFar);
+    }
+
+    @Override
+    public List<String> findValuesAsText(String fieldName, List<String> foundSoFar) {
+        return deepCopy().findValuesAsText(fieldName, foundSoFar);
+    }
+
+    @Override
+    public List<JsonNode> findParents(String fieldName, List<JsonNode> foundSoFar) {
+        return deepCopy().findParents(fieldName, foundSoFar);
+    }
+}
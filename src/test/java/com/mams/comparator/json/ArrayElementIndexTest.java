@@ -0,0 +1,106 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the index against the linear scan it replaced: each source element is paired with the first destination
+ * element not paired yet whose matching property, or whole content with OBJECT, is equal as a Jackson node.
+ */
+public class ArrayElementIndexTest {
+
+    @Test
+    public void matchesByPropertyLikeLinearScan() throws IOException {
+        RandomJson json = new RandomJson(1);
+        for (int i = 0; i < 3000; i++) {
+            check(json, "id", pool(json, 1 + json.random().nextInt(8), true), i % 2 == 0);
+        }
+    }
+
+    @Test
+    public void matchesByObjectLikeLinearScan() throws IOException {
+        RandomJson json = new RandomJson(3);
+        for (int i = 0; i < 3000; i++) {
+            check(json, ArrayElementIndex.OBJECT_MATCHING, pool(json, 1 + json.random().nextInt(8), false), i % 2 == 0);
+        }
+    }
+
+    @Test
+    public void indexesMissingArray() throws IOException {
+        ArrayElementIndex index = new ArrayElementIndex(null, "id", new SubtreeFingerprints());
+        assertEquals(0, index.size());
+        assertEquals(null, index.match(RandomJson.tree("{\"id\":1}")));
+        assertEquals(0, index.unmatched().size());
+    }
+
+    private static void check(RandomJson json, String matchingPropertyName, List<Object> pool, boolean tape) throws IOException {
+        List<Object> src = array(json, pool), dest = array(json, pool);
+        JsonNode srcArray = read(json.write(src, true), tape), destArray = read(json.write(dest, true), tape);
+        String message = srcArray + " / " + destArray;
+        ArrayElementIndex index = new ArrayElementIndex(destArray, matchingPropertyName, new SubtreeFingerprints());
+        assertEquals(message, destArray.size(), index.size());
+
+        boolean[] matched = new boolean[destArray.size()];
+        for (JsonNode srcNode : srcArray) {
+            JsonNode expected = null;
+            for (int position = 0; position < destArray.size(); position++) {
+                JsonNode destNode = destArray.get(position);
+                if(!matched[position] && (ArrayElementIndex.OBJECT_MATCHING.equals(matchingPropertyName)
+                        ? srcNode.equals(destNode) : Objects.equals(srcNode.get(matchingPropertyName), destNode.get(matchingPropertyName)))) {
+                    matched[position] = true;
+                    expected = destNode;
+                    break;
+                }
+            }
+            assertEquals(message, expected, index.match(srcNode));
+        }
+        List<JsonNode> unmatched = new ArrayList<>();
+        for (int position = 0; position < destArray.size(); position++) {
+            if(!matched[position]) {
+                unmatched.add(destArray.get(position));
+            }
+        }
+        assertEquals(message, unmatched, index.unmatched());
+    }
+
+    /**
+     * Elements to draw arrays from. With ids, most elements have one, often equal to the id of others with other
+     * content.
+     */
+    private static List<Object> pool(RandomJson json, int size, boolean ids) {
+        List<Object> pool = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Object element = json.document(2);
+            if(ids && json.random().nextInt(5) > 0) {
+                Map<String, Object> fields = new LinkedHashMap<>();
+                fields.put("id", json.scalar());
+                fields.put("value", element);
+                element = fields;
+            }
+            pool.add(element);
+        }
+        return pool;
+    }
+
+    private static List<Object> array(RandomJson json, List<Object> pool) {
+        int size = json.random().nextInt(30);
+        List<Object> array = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            array.add(pool.get(json.random().nextInt(pool.size())));
+        }
+        return array;
+    }
+
+    private static JsonNode read(String json, boolean tape) throws IOException {
+        return tape ? RandomJson.tape(json) : RandomJson.tree(json);
+    }
+}
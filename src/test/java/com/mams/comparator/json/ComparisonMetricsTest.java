@@ -0,0 +1,167 @@
+package com.mams.comparator.json;
+
+import com.sun.net.httpserver.HttpExchange;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the pipeline against two stub environments and checks the totals of the metrics summary and the flight
+ * recorder events against what the environments served: odd programs differ in cost, and the target payload of
+ * program 3 cannot be fetched.
+ */
+public class ComparisonMetricsTest {
+
+    private static final int PROGRAMS = 10;
+
+    private static final int FAILING = 3;
+
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    private StubServer server;
+
+    @BeforeClass
+    public static void initialize() throws IOException {
+        CompareJsons.initializeComparison();
+        CompareJsons.initializeFetching(false);
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = new StubServer();
+        server.handle("/source/programs", exchange -> respond(exchange, true));
+        server.handle("/target/programs", exchange -> respond(exchange, false));
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void sumsUpTheRun() throws IOException {
+        for (boolean streaming : new boolean[]{false, true}) {
+            bytesServed.set(0);
+            ComparisonMetrics metrics = new ComparisonMetrics();
+            run(streaming, metrics);
+            Map<String, String> summary = summary(metrics);
+            String message = summary.toString();
+            assertEquals(message, String.valueOf(PROGRAMS - 1), summary.get("Programs compared"));
+            assertEquals(message, "1", summary.get("Failed"));
+            assertEquals(message, "0", summary.get("Truncated"));
+            // when streaming, the source payload of the failing program is closed without being read
+            long unread = streaming ? payload(FAILING, true).length() : 0;
+            assertEquals(message, String.valueOf(bytesServed.get() - unread), summary.get("Bytes fetched"));
+            assertEquals(message, "4 (ADDED 0, MODIFIED 4, DELETED 0)", summary.get("Differences"));
+            // both program lists and the payloads of every program but the failing target
+            assertEquals(message, String.valueOf(2 + 2 * PROGRAMS - 1), summary.get("fetch").split(" +")[0]);
+            assertEquals(message, String.valueOf(streaming ? 0 : PROGRAMS - 1), summary.get("parse").split(" +")[0]);
+            assertEquals(message, String.valueOf(PROGRAMS - 1), summary.get("diff").split(" +")[0]);
+            assertEquals(message, String.valueOf(PROGRAMS - 1), summary.get("render").split(" +")[0]);
+        }
+    }
+
+    @Test
+    public void recordsStagesAsFlightRecorderEvents() throws IOException {
+        Path file = Files.createTempFile("comparison", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String stage : asList("Fetch", "Parse", "Diff", "Render")) {
+                recording.enable("com.mams.comparator." + stage);
+            }
+            recording.start();
+            run(false, new ComparisonMetrics());
+            recording.stop();
+            recording.dump(file);
+
+            Map<String, Integer> stages = new TreeMap<>();
+            List<String> modified = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                String stage = event.getEventType().getName().substring("com.mams.comparator.".length());
+                stages.merge(stage, 1, Integer::sum);
+                if("Diff".equals(stage) && event.getInt("modified") > 0) {
+                    modified.add(event.getString("program"));
+                }
+            }
+            Map<String, Integer> expected = new TreeMap<>();
+            expected.put("Fetch", 2 + 2 * PROGRAMS - 1);
+            expected.put("Parse", PROGRAMS - 1);
+            expected.put("Diff", PROGRAMS - 1);
+            expected.put("Render", PROGRAMS - 1);
+            assertEquals(expected, stages);
+            modified.sort(null);
+            assertEquals(asList("Program 1", "Program 5", "Program 7", "Program 9"), modified);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void run(boolean streaming, ComparisonMetrics metrics) throws IOException {
+        new ProgramComparisonPipeline("source", server.url("/source/programs"), "target",
+                server.url("/target/programs"), 4, 2, streaming, new RecordingReporter(), metrics).run();
+    }
+
+    /**
+     * The "name: value" lines of the summary, and the rows of the stage table by stage.
+     */
+    private static Map<String, String> summary(ComparisonMetrics metrics) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        metrics.print(new PrintStream(out, true));
+        Map<String, String> summary = new TreeMap<>();
+        for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            int separator = line.indexOf(": ");
+            if(separator > 0 && !line.startsWith(" ")) {
+                summary.put(line.substring(0, separator).trim(), line.substring(separator + 2));
+            } else if(line.matches("(fetch|parse|diff|render) .*")) {
+                summary.put(line.substring(0, line.indexOf(' ')), line.substring(line.indexOf(' ')).trim());
+            }
+        }
+        return summary;
+    }
+
+    private void respond(HttpExchange exchange, boolean source) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        String body;
+        if("programs".equals(id)) {
+            StringBuilder programs = new StringBuilder("[");
+            for (int i = 0; i < PROGRAMS; i++) {
+                programs.append(i == 0 ? "" : ",").append("{\"id\":\"").append(source ? "s" : "t").append(i)
+                        .append("\",\"name\":\"Program ").append(i).append("\"}");
+            }
+            body = programs.append("]").toString();
+        } else {
+            int program = Integer.parseInt(id.substring(1));
+            if(!source && program == FAILING) {
+                StubServer.respond(exchange, 404, "");
+                return;
+            }
+            body = payload(program, source);
+        }
+        bytesServed.addAndGet(body.getBytes(StandardCharsets.UTF_8).length);
+        StubServer.respond(exchange, 200, body);
+    }
+
+    private static String payload(int program, boolean source) {
+        int cost = !source && program % 2 == 1 ? program + 100 : program;
+        return "{\"name\":\"Program " + program + "\",\"cost\":" + cost + "}";
+    }
+}
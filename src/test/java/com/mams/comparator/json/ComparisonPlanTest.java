@@ -0,0 +1,66 @@
+package com.mams.comparator.json;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PropertyResourceBundle;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ComparisonPlanTest {
+
+    private static final String CONFIG = "compare.elements.names=activities,cost\n"
+            + "activities.matching.property=name\n"
+            + "activities.compare.elements.names=name,criteria\n"
+            + "activities.criteria.compare.elements.names=ALL\n"
+            + "activities.criteria.goal.compare.elements.names=target\n";
+
+    @Test
+    public void comparesEverythingBelowAll() throws IOException {
+        ComparisonPlan criteria = compile(CONFIG, null).child("activities").child("criteria");
+        ComparisonPlan nested = criteria.child("range").child("bounds");
+        assertTrue(nested.isPropertyNeededForComparision("low"));
+        assertTrue(nested.child("any").isPropertyNeededForComparision("thing"));
+        assertTrue(criteria.child("goal").isPropertyNeededForComparision("target"));
+        assertFalse(criteria.child("goal").isPropertyNeededForComparision("unit"));
+    }
+
+    @Test
+    public void keepsTheDefaultOfUnkeyedArraysBelowAll() throws IOException {
+        ComparisonPlan skipped = compile(CONFIG, null).child("activities").child("criteria").child("list");
+        assertNull(skipped.getMatchingPropertyName());
+        ComparisonPlan ordered = compile(CONFIG, OrderedArrayDiff.ORDERED_MATCHING).child("activities").child("criteria").child("list");
+        assertEquals(OrderedArrayDiff.ORDERED_MATCHING, ordered.getMatchingPropertyName());
+    }
+
+    @Test
+    public void comparesNoFieldsOfUnconfiguredObjects() throws IOException {
+        ComparisonPlan cost = compile(CONFIG, null).child("cost");
+        assertFalse(cost.hasFieldsToCompare());
+        assertFalse(cost.isPropertyNeededForComparision("amount"));
+    }
+
+    @Test
+    public void reportsNestedDifferencesBelowAll() throws IOException {
+        ComparisonPlan plan = compile(CONFIG, null);
+        DiffCollector collector = new DiffCollector();
+        CompareJsons.compareObject(
+                RandomJson.tree("{\"activities\":[{\"name\":\"a\",\"criteria\":{\"range\":{\"low\":1},\"list\":[1],\"goal\":{\"target\":1,\"unit\":\"x\"}}}],\"cost\":{\"amount\":1}}"),
+                RandomJson.tree("{\"activities\":[{\"name\":\"a\",\"criteria\":{\"range\":{\"low\":2},\"list\":[2],\"goal\":{\"target\":2,\"unit\":\"y\"}}}],\"cost\":{\"amount\":2}}"),
+                plan, DiffPath.ROOT, new ComparisonContext(), collector);
+        List<String> diffs = new ArrayList<>();
+        collector.forEach(diff -> diffs.add(diff.getPath().getKey() + "=" + diff.getDestValue()));
+        assertEquals(asList("activities[name=\"a\"].criteria.range.low=2", "activities[name=\"a\"].criteria.goal.target=2"), diffs);
+    }
+
+    static ComparisonPlan compile(String config, String defaultMatchingPropertyName) throws IOException {
+        return ComparisonPlan.compile(new PropertyResourceBundle(new StringReader(config)), defaultMatchingPropertyName);
+    }
+}
@@ -0,0 +1,142 @@
+package com.mams.comparator.json;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ComparisonServerTest {
+
+    private static final String SOURCE = "{\"name\":\"Program 1\",\"cost\":1,\"type\":\"a\"}";
+
+    private static final String TARGET = "{\"name\":\"Program 2\",\"cost\":2,\"type\":\"a\"}";
+
+    private ComparisonServer server;
+
+    @BeforeClass
+    public static void initialize() throws IOException {
+        CompareJsons.initializeComparison();
+        CompareJsons.initializeFetching(false);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void reportsPayloadsLikeCommandLine() throws IOException {
+        start(2, 2);
+        for (String format : new String[]{"jsonl", "table", "jsonpatch"}) {
+            Writer expected = new StringWriter();
+            DiffCollector diffs = new DiffCollector();
+            CompareJsons.compareJsons(RandomJson.tree(SOURCE), RandomJson.tree(TARGET), diffs);
+            try (DiffReporter reporter = CompareJsons.createReporter(format, expected, "source", "target")) {
+                reporter.startProgram("Program 1");
+                diffs.replayTo(reporter);
+                reporter.endProgram();
+            }
+            HttpURLConnection connection = request("POST", "/compare?program=Program+1&format=" + format,
+                    "{\"source\":" + SOURCE + ",\"target\":" + TARGET + "}");
+            assertEquals(format, 200, connection.getResponseCode());
+            assertEquals(format, expected.toString(), read(connection.getInputStream()));
+        }
+    }
+
+    @Test
+    public void rejectsBadRequests() throws IOException {
+        start(2, 2);
+        assertEquals(400, request("POST", "/compare", "{\"source\":" + SOURCE + "}").getResponseCode());
+        assertEquals(400, request("POST", "/compare", "{\"source\":").getResponseCode());
+        assertEquals(400, request("GET", "/compare?source=qa", null).getResponseCode());
+        assertEquals(400, request("GET", "/compare?source=qa&target=nowhere", null).getResponseCode());
+        assertEquals(405, request("PUT", "/compare", "{}").getResponseCode());
+    }
+
+    /**
+     * Holds one thread and the only queue slot with requests whose body never comes, then checks that the
+     * next comparison is turned away while /health still answers, and admitted again once they are gone.
+     */
+    @Test
+    public void turnsComparisonsAwayWhenFull() throws Exception {
+        start(1, 1);
+        List<Socket> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                socket.getOutputStream().write(("POST /compare HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1000\r\n\r\n{")
+                        .getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().flush();
+                held.add(socket);
+            }
+            HttpURLConnection rejected = null;
+            for (long deadline = System.currentTimeMillis() + 5000; System.currentTimeMillis() < deadline; Thread.sleep(20)) {
+                rejected = request("POST", "/compare", "{\"source\":" + SOURCE + ",\"target\":" + TARGET + "}");
+                if(rejected.getResponseCode() == 503) {
+                    break;
+                }
+            }
+            assertEquals(503, rejected.getResponseCode());
+            assertEquals("5", rejected.getHeaderField("Retry-After"));
+
+            HttpURLConnection health = request("GET", "/health", null);
+            assertEquals(200, health.getResponseCode());
+            assertEquals("ok\n", read(health.getInputStream()));
+        } finally {
+            for (Socket socket : held) {
+                socket.close();
+            }
+        }
+        int status = 0;
+        for (long deadline = System.currentTimeMillis() + 5000; status != 200 && System.currentTimeMillis() < deadline; Thread.sleep(20)) {
+            status = request("POST", "/compare", "{\"source\":" + SOURCE + ",\"target\":" + TARGET + "}").getResponseCode();
+        }
+        assertEquals(200, status);
+    }
+
+    private void start(int threads, int queue) throws IOException {
+        server = new ComparisonServer(0, threads, queue);
+        server.start();
+    }
+
+    private HttpURLConnection request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://" + InetAddress.getLoopbackAddress().getHostAddress()
+                + ":" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+        if(body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return connection;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream body = in) {
+            byte[] buffer = new byte[8192];
+            for (int read; (read = body.read(buffer)) != -1; ) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
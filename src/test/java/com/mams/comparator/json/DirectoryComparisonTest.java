@@ -0,0 +1,94 @@
+package com.mams.comparator.json;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryComparisonTest {
+
+    private static final int FILES = 40;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void initialize() {
+        CompareJsons.initializeComparison();
+    }
+
+    @Test
+    public void reportsFilesInPathOrder() throws IOException {
+        check(false);
+    }
+
+    @Test
+    public void reportsFilesInPathOrderWhileStreaming() throws IOException {
+        check(true);
+    }
+
+    /**
+     * Odd files differ in cost, one file of the target tree is not JSON and each tree has a file the other one
+     * does not have. Files are written in reverse order, and the bigger the earlier, so that they are not
+     * diffed in the order they are reported.
+     */
+    private void check(boolean streaming) throws IOException {
+        Path srcRoot = folder.newFolder("qa").toPath(), destRoot = folder.newFolder("prod").toPath();
+        List<String> expected = new ArrayList<>();
+        for (int i = FILES - 1; i >= 0; i--) {
+            String name = String.format("programs/%02d.json", i);
+            StringBuilder padding = new StringBuilder();
+            for (int j = (FILES - i) * 500; j > 0; j--) {
+                padding.append(",\"x").append(j).append("\":").append(j);
+            }
+            write(srcRoot, name, "{\"name\":\"Program " + i + "\",\"cost\":" + i + padding + "}");
+            write(destRoot, name, i == 13 ? "{\"name\":" : "{\"name\":\"Program " + i + "\",\"cost\":"
+                    + (i % 2 == 1 ? i + 100 : i) + padding + "}");
+        }
+        for (int i = 0; i < FILES; i++) {
+            String name = String.format("programs/%02d.json", i);
+            if(i == 13) {
+                expected.add("failed " + name);
+                continue;
+            }
+            expected.add("start " + name);
+            if(i % 2 == 1) {
+                expected.add("MODIFIED cost " + i + " -> " + (i + 100));
+            }
+            expected.add("end");
+        }
+        write(srcRoot, "only-qa.json", "{}");
+        write(destRoot, "only-prod.json", "{}");
+
+        RecordingReporter reporter = new RecordingReporter();
+        DirectoryComparison.Summary summary = new DirectoryComparison(srcRoot, destRoot, 4, streaming).run(reporter);
+        assertEquals(expected, reporter.lines());
+
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        summary.print(new PrintStream(printed, true, "UTF-8"));
+        String text = new String(printed.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(text, text.contains("Files compared              : " + (FILES - 1)));
+        assertTrue(text, text.contains("With differences            : " + (FILES / 2 - 1)));
+        assertTrue(text, text.contains("Failed                      : 1"));
+        assertTrue(text, text.contains("Only in qa                  : 1"));
+        assertTrue(text, text.contains("Only in prod                : 1"));
+    }
+
+    private static void write(Path root, String name, String json) throws IOException {
+        Path file = root.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,213 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mams.comparator.json.CompareJsons.DiffModes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Serves the programs of several stub environments and checks the rows of the matrix against the pairwise
+ * comparisons it stands for.
+ */
+public class EnvironmentMatrixTest {
+
+    private static final String[] FIELDS = {"name", "cost", "type", "category", "bullet1"};
+
+    private static final String[] VALUES = {"1", "2", "\"a\"", "\"b\"", "true"};
+
+    private final Map<String, String> payloads = new LinkedHashMap<>();
+
+    private final Map<String, List<String>> programLists = new LinkedHashMap<>();
+
+    private StubServer server;
+
+    @BeforeClass
+    public static void initialize() throws IOException {
+        CompareJsons.initializeComparison();
+        CompareJsons.initializeFetching(false);
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = new StubServer();
+        server.handle("/", exchange -> {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String body = path.length == 3 ? "[" + String.join(",", programLists.get(path[1])) + "]"
+                    : payloads.get(path[1] + "/" + path[3]);
+            StubServer.respond(exchange, body == null ? 404 : 200, body == null ? "" : body);
+        });
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void reportsBaselineComparisonsAsRows() throws IOException {
+        Random random = new Random(14);
+        List<String> envs = asList("qa", "qaa", "pre", "prod");
+        List<String> expected = new ArrayList<>();
+        for (int program = 0; program < 40; program++) {
+            List<String> documents = new ArrayList<>();
+            String baseline = document(random, null, program);
+            for (String env : envs) {
+                String document = documents.isEmpty() ? baseline
+                        : random.nextInt(4) == 0 ? documents.get(random.nextInt(documents.size()))
+                        : document(random, RandomJson.tree(baseline), program);
+                documents.add(document);
+                addProgram(env, program, document);
+            }
+            expected.addAll(expectedRows(program, documents));
+        }
+        assertEquals(expected, run(envs, false));
+    }
+
+    @Test
+    public void reportsDifferencesBetweenTargetsInMatrix() throws IOException {
+        List<String> envs = asList("qa", "pre", "prod");
+        addProgram("qa", 1, "{\"name\":\"Program 1\"}");
+        addProgram("pre", 1, "{\"name\":\"Program 1\",\"cost\":1}");
+        addProgram("prod", 1, "{\"name\":\"Program 1\",\"cost\":2}");
+        addProgram("qa", 2, "{\"name\":\"Program 2\",\"cost\":1}");
+        addProgram("prod", 2, "{\"name\":\"Program 2\",\"cost\":3}");
+        addProgram("qa", 3, "{\"name\":\"Program 3\",\"cost\":1}");
+
+        List<String> missing = asList("start Program 2", "name Program 2|null|Program 2 DELETED",
+                "cost 1|null|3 MIXED", "end");
+        List<String> expected = new ArrayList<>(asList("start Program 1", "end"));
+        expected.addAll(missing);
+        assertEquals(expected, run(envs, false));
+        expected = new ArrayList<>(asList("start Program 1", "cost null|1|2 MODIFIED", "end"));
+        expected.addAll(missing);
+        assertEquals(expected, run(envs, true));
+    }
+
+    private List<String> run(List<String> envs, boolean matrix) throws IOException {
+        List<String> urls = new ArrayList<>();
+        envs.forEach(env -> urls.add(server.url("/" + env + "/programs")));
+        RecordingMatrixReporter reporter = new RecordingMatrixReporter();
+        new EnvironmentMatrix(envs, urls, 4, 2, matrix).run(reporter);
+        return reporter.lines;
+    }
+
+    private void addProgram(String env, int program, String document) {
+        programLists.computeIfAbsent(env, key -> new ArrayList<>())
+                .add("{\"id\":\"" + env + program + "\",\"name\":\"Program " + program + "\"}");
+        payloads.put(env + "/" + env + program, document);
+    }
+
+    /**
+     * A document with the configured top-level fields: random ones, or those of the baseline with some of them
+     * changed or left out.
+     */
+    private static String document(Random random, JsonNode baseline, int program) {
+        StringBuilder document = new StringBuilder("{\"name\":\"Program ").append(program).append('"');
+        for (String field : Arrays.copyOfRange(FIELDS, 1, FIELDS.length)) {
+            String value = baseline == null || random.nextInt(3) == 0 ? VALUES[random.nextInt(VALUES.length)]
+                    : baseline.has(field) ? baseline.get(field).toString() : null;
+            if(value != null && (baseline == null || random.nextInt(10) > 0)) {
+                document.append(",\"").append(field).append("\":").append(value);
+            }
+        }
+        return document.append('}').toString();
+    }
+
+    /**
+     * The rows of a program from comparing the baseline with every other environment on its own: the values
+     * reported in each comparison, and the baseline value for the environments without a difference.
+     */
+    private static List<String> expectedRows(int program, List<String> documents) throws IOException {
+        Map<String, String[]> values = new LinkedHashMap<>();
+        Map<String, String> modes = new LinkedHashMap<>();
+        Map<String, boolean[]> reported = new LinkedHashMap<>();
+        for (int j = 1; j < documents.size(); j++) {
+            int environment = j;
+            DiffCollector diffs = new DiffCollector();
+            CompareJsons.compareObject(RandomJson.tree(documents.get(0)), RandomJson.tree(documents.get(j)),
+                    CompareJsons.getComparisonPlan(), DiffPath.ROOT, new ComparisonContext(), diffs);
+            diffs.forEach(diff -> {
+                String key = diff.getPath().getKey();
+                String[] row = values.computeIfAbsent(key, rowKey -> new String[documents.size()]);
+                boolean[] rowReported = reported.computeIfAbsent(key, rowKey -> new boolean[documents.size()]);
+                row[0] = diff.getSrcValue();
+                row[environment] = diff.getDestValue();
+                rowReported[0] = rowReported[environment] = true;
+                String mode = modes.get(key);
+                modes.put(key, mode == null || mode.equals(diff.getMode().name()) ? diff.getMode().name() : EnvironmentMatrix.MIXED);
+            });
+        }
+        List<String> rows = new ArrayList<>();
+        rows.add("start Program " + program);
+        values.forEach((key, row) -> {
+            for (int i = 1; i < row.length; i++) {
+                if(!reported.get(key)[i]) {
+                    row[i] = row[0];
+                }
+            }
+            rows.add(key + " " + String.join("|", asStrings(row)) + " " + modes.get(key));
+        });
+        rows.add("end");
+        return rows;
+    }
+
+    private static List<String> asStrings(String[] values) {
+        List<String> strings = new ArrayList<>();
+        for (String value : values) {
+            strings.add(String.valueOf(value));
+        }
+        return strings;
+    }
+
+    private static final class RecordingMatrixReporter implements MatrixDiffReporter {
+
+        private final List<String> lines = new ArrayList<>();
+
+        @Override
+        public void diff(DiffPath path, String[] values, String diff) {
+            lines.add(path.getKey() + " " + String.join("|", asStrings(values)) + " " + diff);
+        }
+
+        @Override
+        public void startProgram(String programName) {
+            lines.add("start " + programName);
+        }
+
+        @Override
+        public void diff(DiffPath path, String srcValue, String destValue, DiffModes mode, JsonNode destNode) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void truncated(String reason) {
+            lines.add("truncated " + reason);
+        }
+
+        @Override
+        public void endProgram() {
+            lines.add("end");
+        }
+
+        @Override
+        public void programFailed(String programName, Throwable cause) {
+            lines.add("failed " + programName + ": " + cause);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
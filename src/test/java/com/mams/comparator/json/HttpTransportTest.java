@@ -0,0 +1,172 @@
+package com.mams.comparator.json;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpTransportTest {
+
+    private static final byte[] BODY = "{\"name\":\"Program 1\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static final long BACKOFF_MILLIS = 100;
+
+    private final List<Long> requestTimes = Collections.synchronizedList(new ArrayList<>());
+
+    private StubServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new StubServer();
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void retriesUntilSuccessWithGrowingBackoff() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        server.handle("/program", exchange -> {
+            requestTimes.add(System.nanoTime());
+            StubServer.respond(exchange, requests.incrementAndGet() == 1 ? 503 : requests.get() == 2 ? 429 : 200, BODY);
+        });
+        assertArrayEquals(BODY, transport(3).getBytes(server.url("/program")));
+        assertEquals(3, requestTimes.size());
+        assertTrue(waited(0) >= BACKOFF_MILLIS);
+        assertTrue(waited(1) >= 2 * BACKOFF_MILLIS);
+    }
+
+    @Test
+    public void givesUpOnceRetriesAreExhausted() {
+        server.handle("/program", exchange -> {
+            requestTimes.add(System.nanoTime());
+            StubServer.respond(exchange, 500, "unavailable");
+        });
+        try {
+            transport(2).getBytes(server.url("/program"));
+            fail("500 returned");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("returned 500"));
+        }
+        assertEquals(3, requestTimes.size());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() {
+        server.handle("/program", exchange -> {
+            requestTimes.add(System.nanoTime());
+            StubServer.respond(exchange, 404, "not found");
+        });
+        try {
+            transport(3).open(server.url("/program"));
+            fail("404 returned");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("returned 404"));
+        }
+        assertEquals(1, requestTimes.size());
+    }
+
+    @Test
+    public void retriesRefusedConnections() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+        long started = System.nanoTime();
+        try {
+            transport(2).getBytes("http://127.0.0.1:" + port + "/program");
+            fail("connection refused");
+        } catch (IOException expected) {
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 3 * BACKOFF_MILLIS);
+        }
+    }
+
+    @Test
+    public void inflatesGzipEncodedBodies() throws IOException {
+        server.handle("/program", exchange -> {
+            assertEquals("gzip", exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(BODY);
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            StubServer.respond(exchange, 200, compressed.toByteArray());
+        });
+        HttpTransport transport = transport(0);
+        assertArrayEquals(BODY, transport.getBytes(server.url("/program")));
+        try (InputStream body = transport.open(server.url("/program"))) {
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4];
+            for (int n; (n = body.read(buffer)) >= 0; ) {
+                read.write(buffer, 0, n);
+            }
+            assertArrayEquals(BODY, read.toByteArray());
+        }
+    }
+
+    /**
+     * The body of an error response is far bigger than socket buffers, so the stub can only finish writing it
+     * once the client has closed the connection or read it all.
+     */
+    @Test
+    public void releasesTheConnectionOfAFailedStreamingFetch() throws Exception {
+        CountDownLatch finished = new CountDownLatch(1);
+        server.handle("/program", exchange -> writeLargeBody(exchange, 404, finished));
+        try {
+            transport(0).open(server.url("/program"));
+            fail("404 returned");
+        } catch (IOException expected) {
+            assertTrue(finished.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Writes 64 MB, counting down once done, whether the client read them or went away.
+     */
+    static void writeLargeBody(HttpExchange exchange, int status, CountDownLatch finished) throws IOException {
+        byte[] chunk = new byte[1 << 16];
+        int chunks = 1 << 10;
+        try {
+            exchange.sendResponseHeaders(status, (long) chunk.length * chunks);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < chunks; i++) {
+                    out.write(chunk);
+                }
+            }
+        } catch (IOException gone) {
+            // the client closed the connection
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private static HttpTransport transport(int retries) {
+        return new HttpTransport(2000, 5000, retries, BACKOFF_MILLIS, false);
+    }
+
+    private long waited(int retry) {
+        return TimeUnit.NANOSECONDS.toMillis(requestTimes.get(retry + 1) - requestTimes.get(retry));
+    }
+}
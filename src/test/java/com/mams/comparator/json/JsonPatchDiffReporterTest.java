@@ -0,0 +1,271 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Applies the patches written for two documents to the first one and checks that the result is the second.
+ *
+ * Comparisons only look at the properties of the source document, so the random destination documents only
+ * differ from their source in values: objects always have the same fields, and fields are only removed when
+ * their value is a scalar or an array and they are not in an array, where an object may be paired with another
+ * one that has an object there (whose fields are then deleted one by one). Null values, which compare equal to
+ * missing ones, are left to the tests of single cases. Keyed arrays do not keep the order of the destination
+ * document either, so their elements have distinct keys, at most one of them null, and are only changed in
+ * place, removed or appended.
+ */
+public class JsonPatchDiffReporterTest {
+
+    private static final String CONFIG = "compare.elements.names=ALL\n"
+            + "items.matching.property=id\n";
+
+    private static final String[] FIELDS = {"a", "b", "c"};
+
+    private static final String[] SCALARS = {"0", "1", "-1", "1.0", "100", "true", "false", "\"a\"", "\"b\"", "\"x y\""};
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    @Test
+    public void replacesArrayMissingFromSource() throws IOException {
+        roundTrip("{\"items\":null,\"a\":1}", "{\"items\":[{\"id\":1,\"v\":2}],\"a\":1}");
+        roundTrip("{\"a\":1}", "{\"a\":[1,2]}");
+        roundTrip("{\"a\":[1,2]}", "{\"a\":\"x\"}");
+        roundTrip("{\"items\":[{\"id\":1}],\"a\":{\"b\":[1]}}", "{\"items\":null,\"a\":{\"b\":null}}");
+        assertEquals(RandomJson.tree("[{\"op\":\"add\",\"path\":\"/items\",\"value\":[{\"id\":1}]}]"),
+                patch("{\"items\":null}", "{\"items\":[{\"id\":1}]}"));
+    }
+
+    @Test
+    public void pointsPastDeletedNullElements() throws IOException {
+        roundTrip("{\"items\":[null,{\"id\":1,\"v\":1},{\"id\":2,\"v\":1}]}", "{\"items\":[{\"id\":1,\"v\":1},{\"id\":2,\"v\":2}]}");
+        roundTrip("{\"items\":[{\"id\":1},null,null,{\"id\":2,\"v\":1}]}", "{\"items\":[{\"id\":1},{\"id\":2,\"v\":2}]}");
+        roundTrip("{\"a\":[null,1,null]}", "{\"a\":[1,2]}");
+    }
+
+    @Test
+    public void turnsRandomSourcesIntoDestinations() throws IOException {
+        Random random = new Random(8);
+        for (int i = 0; i < 5000; i++) {
+            ObjectNode src = object(random, 3);
+            ArrayNode items = src.putArray("items");
+            for (int size = random.nextInt(6), j = 0; j < size; j++) {
+                items.add(item(random, j));
+            }
+            if(random.nextBoolean()) {
+                items.insert(random.nextInt(items.size() + 1), NODES.nullNode());
+            }
+            JsonNode dest = mutateFields(random, src, 3, true);
+            roundTrip(src.toString(), dest.toString(), i % 2 == 0);
+        }
+    }
+
+    private static void roundTrip(String src, String dest) throws IOException {
+        roundTrip(src, dest, false);
+        roundTrip(src, dest, true);
+    }
+
+    private static void roundTrip(String src, String dest, boolean tape) throws IOException {
+        JsonNode patch = patch(src, dest, tape);
+        assertEquals(src + " / " + dest + " / " + patch, RandomJson.tree(dest), apply(RandomJson.tree(src), patch));
+    }
+
+    private static JsonNode patch(String src, String dest) throws IOException {
+        return patch(src, dest, false);
+    }
+
+    private static JsonNode patch(String src, String dest, boolean tape) throws IOException {
+        StringWriter out = new StringWriter();
+        try (DiffReporter reporter = new JsonPatchDiffReporter(out, OBJECT_MAPPER)) {
+            reporter.startProgram(null);
+            CompareJsons.compareObject(tape ? RandomJson.tape(src) : RandomJson.tree(src),
+                    tape ? RandomJson.tape(dest) : RandomJson.tree(dest),
+                    ComparisonPlanTest.compile(CONFIG, OrderedArrayDiff.ORDERED_MATCHING), DiffPath.ROOT,
+                    new ComparisonContext(), reporter);
+            reporter.endProgram();
+        }
+        return RandomJson.tree(out.toString());
+    }
+
+    /**
+     * Applies an RFC 6902 patch of add, remove and replace operations, failing on any operation that does not
+     * apply to the document as patched so far.
+     */
+    private static JsonNode apply(JsonNode document, JsonNode patch) {
+        JsonNode patched = document.deepCopy();
+        for (JsonNode operation : patch) {
+            String op = operation.get("op").asText(), path = operation.get("path").asText();
+            String[] tokens = path.split("/", -1);
+            assertTrue(path, tokens.length > 1 && tokens[0].isEmpty());
+            JsonNode parent = patched;
+            for (int i = 1; i < tokens.length - 1; i++) {
+                parent = parent.isArray() ? parent.get(index(parent, tokens[i], false, path)) : parent.get(unescape(tokens[i]));
+                if(parent == null || !parent.isContainerNode()) {
+                    fail("No container at " + path + " for " + operation);
+                }
+            }
+            String last = tokens[tokens.length - 1];
+            JsonNode value = operation.get("value");
+            if(parent.isArray()) {
+                ArrayNode array = (ArrayNode) parent;
+                if("add".equals(op)) {
+                    if("-".equals(last)) {
+                        array.add(value);
+                    } else {
+                        array.insert(index(array, last, true, path), value);
+                    }
+                } else if("remove".equals(op)) {
+                    array.remove(index(array, last, false, path));
+                } else {
+                    array.set(index(array, last, false, path), value);
+                }
+            } else {
+                ObjectNode object = (ObjectNode) parent;
+                String name = unescape(last);
+                if(!"add".equals(op) && !object.has(name)) {
+                    fail("No member to " + op + " at " + path);
+                }
+                if("remove".equals(op)) {
+                    object.remove(name);
+                } else {
+                    object.set(name, value);
+                }
+            }
+        }
+        return patched;
+    }
+
+    private static int index(JsonNode array, String token, boolean adding, String path) {
+        int index = -1;
+        try {
+            index = Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            fail("Not an array index in " + path);
+        }
+        if(index < 0 || index > array.size() || index == array.size() && !adding) {
+            fail("Index out of bounds in " + path);
+        }
+        return index;
+    }
+
+    private static String unescape(String token) {
+        return token.replace("~1", "/").replace("~0", "~");
+    }
+
+    private static JsonNode value(Random random, int depth) {
+        int kind = depth == 0 ? 0 : random.nextInt(4);
+        if(kind == 1) {
+            return object(random, depth - 1);
+        }
+        if(kind == 2) {
+            ArrayNode array = NODES.arrayNode();
+            for (int size = random.nextInt(5), i = 0; i < size; i++) {
+                array.add(value(random, depth - 1));
+            }
+            return array;
+        }
+        try {
+            return RandomJson.tree(SCALARS[random.nextInt(SCALARS.length)]);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static ObjectNode object(Random random, int depth) {
+        ObjectNode object = NODES.objectNode();
+        for (String field : FIELDS) {
+            object.set(field, value(random, depth));
+        }
+        return object;
+    }
+
+    private static JsonNode item(Random random, int id) {
+        ObjectNode item = NODES.objectNode();
+        item.put("id", id);
+        item.set("v", value(random, 2));
+        return item;
+    }
+
+    /**
+     * A copy of a value with some of its values replaced, removed when removable or, in arrays, inserted. An
+     * object is only replaced by a value that is not an object, so that its fields stay the same.
+     */
+    private static JsonNode mutate(Random random, JsonNode node, int depth, boolean removable) {
+        depth = Math.max(0, depth);
+        if(node.isObject()) {
+            return random.nextInt(12) == 0 ? value(random, 0) : mutateFields(random, node, depth, removable);
+        }
+        if(random.nextInt(8) == 0) {
+            return value(random, depth);
+        }
+        if(node.isArray()) {
+            ArrayNode array = NODES.arrayNode();
+            for (JsonNode element : node) {
+                int edit = random.nextInt(8);
+                if(edit == 0) {
+                    continue;
+                }
+                if(edit == 1) {
+                    array.add(value(random, depth));
+                }
+                array.add(mutate(random, element, depth - 1, false));
+            }
+            if(random.nextInt(4) == 0) {
+                array.add(value(random, depth));
+            }
+            return array;
+        }
+        return node;
+    }
+
+    private static ObjectNode mutateFields(Random random, JsonNode node, int depth, boolean removable) {
+        ObjectNode object = NODES.objectNode();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            if(removable && !value.isObject() && random.nextInt(10) == 0) {
+                continue;
+            }
+            object.set(field.getKey(), "items".equals(field.getKey()) && value.isArray()
+                    ? mutateItems(random, value) : mutate(random, value, depth - 1, removable));
+        }
+        return object;
+    }
+
+    private static JsonNode mutateItems(Random random, JsonNode items) {
+        ArrayNode array = NODES.arrayNode();
+        for (JsonNode item : items) {
+            int edit = random.nextInt(4);
+            if(edit == 0) {
+                continue;
+            }
+            if(edit == 1 && item.isObject()) {
+                ObjectNode changed = NODES.objectNode();
+                changed.set("id", item.get("id"));
+                changed.set("v", mutate(random, item.get("v"), 2, false));
+                array.add(changed);
+            } else {
+                array.add(item);
+            }
+        }
+        for (int added = random.nextInt(3), i = 0; i < added; i++) {
+            array.add(item(random, items.size() + i));
+        }
+        return array;
+    }
+}
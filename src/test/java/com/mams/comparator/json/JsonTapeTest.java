@@ -0,0 +1,62 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonTapeTest {
+
+    private static final int DOCUMENTS = 20000;
+
+    @Test
+    public void equalityMatchesJackson() throws IOException {
+        RandomJson json = new RandomJson(19);
+        SubtreeFingerprints fingerprints = new SubtreeFingerprints();
+        int equal = 0;
+        for (int i = 0; i < DOCUMENTS; i++) {
+            Object document = json.document(4);
+            int kind = json.random().nextInt(3);
+            Object other = kind == 0 ? document : kind == 1 ? json.mutate(document, 0.05, 4) : json.document(4);
+            String src = json.write(document, false), dest = json.write(other, true);
+            JsonNode srcTree = RandomJson.tree(src), destTree = RandomJson.tree(dest);
+            JsonNode srcTape = RandomJson.tape(src), destTape = RandomJson.tape(dest);
+            String message = src + " / " + dest;
+
+            assertTrue(message, srcTape instanceof TapeNode && destTape instanceof TapeNode);
+            assertEquals(message, srcTree, srcTape.deepCopy());
+            assertEquals(message, destTree, destTape.deepCopy());
+            assertEquals(message, srcTree.equals(destTree), srcTape.equals(destTape));
+            assertEquals(message, srcTree.equals(destTree), fingerprints.areEqual(srcTape, destTape));
+            if(srcTree.equals(destTree)) {
+                assertEquals(message, srcTape.hashCode(), destTape.hashCode());
+                assertEquals(message, fingerprints.fingerprint(srcTape), fingerprints.fingerprint(destTape));
+                equal++;
+            }
+        }
+        assertTrue("too few equal documents: " + equal, equal > DOCUMENTS / 4);
+    }
+
+    @Test
+    public void equalsJacksonNodes() throws IOException {
+        RandomJson json = new RandomJson(7);
+        for (int i = 0; i < DOCUMENTS / 10; i++) {
+            String document = json.write(json.document(3), true);
+            JsonNode tape = RandomJson.tape(document);
+            JsonNode tree = RandomJson.tree(document);
+            assertTrue(document, tape.equals(tree));
+            assertTrue(document, tape.equals(tape.deepCopy()));
+        }
+    }
+
+    @Test
+    public void readsDuplicateFieldNamesAsTree() throws IOException {
+        JsonNode document = RandomJson.tape("{\"a\":1,\"b\":{\"a\":2,\"a\":3}}");
+        assertFalse(document instanceof TapeNode);
+        assertEquals(RandomJson.tree("{\"a\":1,\"b\":{\"a\":3}}"), document);
+    }
+}
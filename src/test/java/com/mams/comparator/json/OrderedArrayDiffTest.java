@@ -0,0 +1,132 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OrderedArrayDiffTest {
+
+    @Test
+    public void rebuildsDestinationMinimally() throws IOException {
+        RandomJson json = new RandomJson(11);
+        for (int i = 0; i < 3000; i++) {
+            List<Object> pool = pool(json, 1 + json.random().nextInt(5));
+            List<Object> src = array(json, pool, json.random().nextInt(40));
+            List<Object> dest = json.random().nextBoolean() ? array(json, pool, json.random().nextInt(40))
+                    : edit(json, pool, src, 1 + json.random().nextInt(6));
+            check(json, src, dest, i % 2 == 0);
+        }
+    }
+
+    @Test
+    public void rebuildsLongArraysMinimally() throws IOException {
+        RandomJson json = new RandomJson(13);
+        for (int i = 0; i < 20; i++) {
+            List<Object> pool = pool(json, 2 + json.random().nextInt(30));
+            List<Object> src = array(json, pool, 500 + json.random().nextInt(1500));
+            check(json, src, edit(json, pool, src, json.random().nextInt(200)), i % 2 == 0);
+        }
+    }
+
+    @Test
+    public void alignsEmptyArrays() throws IOException {
+        RandomJson json = new RandomJson(17);
+        List<Object> pool = pool(json, 3);
+        check(json, new ArrayList<>(), new ArrayList<>(), false);
+        check(json, new ArrayList<>(), array(json, pool, 10), false);
+        check(json, array(json, pool, 10), new ArrayList<>(), true);
+    }
+
+    /**
+     * Applies the alignment as an edit script, deleting the source elements not kept and inserting the
+     * destination elements not kept, and checks that it gives the destination with as few edits as possible.
+     */
+    private static void check(RandomJson json, List<Object> src, List<Object> dest, boolean tape) throws IOException {
+        List<JsonNode> srcNodes = elements(json, src, tape), destNodes = elements(json, dest, tape);
+        OrderedArrayDiff diff = new OrderedArrayDiff(srcNodes, destNodes, new SubtreeFingerprints());
+        String message = json.write(src, false) + " / " + json.write(dest, false);
+
+        List<JsonNode> rebuilt = new ArrayList<>();
+        int srcPosition = 0, kept = 0;
+        for (int destPosition = 0; destPosition < destNodes.size(); destPosition++) {
+            if(!diff.isDestKept(destPosition)) {
+                rebuilt.add(destNodes.get(destPosition));
+                continue;
+            }
+            while (srcPosition < srcNodes.size() && !diff.isSrcKept(srcPosition)) {
+                srcPosition++;
+            }
+            assertTrue(message, srcPosition < srcNodes.size());
+            rebuilt.add(srcNodes.get(srcPosition++));
+            kept++;
+        }
+        while (srcPosition < srcNodes.size()) {
+            assertFalse(message, diff.isSrcKept(srcPosition++));
+        }
+        assertEquals(message, destNodes, rebuilt);
+        assertEquals(message, longestCommonSubsequence(srcNodes, destNodes), kept);
+    }
+
+    private static int longestCommonSubsequence(List<JsonNode> src, List<JsonNode> dest) {
+        int[] previous = new int[dest.size() + 1], current = new int[dest.size() + 1];
+        for (JsonNode srcNode : src) {
+            for (int j = 1; j <= dest.size(); j++) {
+                current[j] = srcNode.equals(dest.get(j - 1)) ? previous[j - 1] + 1
+                        : Math.max(previous[j], current[j - 1]);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[dest.size()];
+    }
+
+    private static List<Object> pool(RandomJson json, int size) {
+        List<Object> pool = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            pool.add(json.document(2));
+        }
+        return pool;
+    }
+
+    private static List<Object> array(RandomJson json, List<Object> pool, int size) {
+        List<Object> array = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            array.add(pool.get(json.random().nextInt(pool.size())));
+        }
+        return array;
+    }
+
+    /**
+     * A copy of the array with elements deleted, inserted or replaced at random positions.
+     */
+    private static List<Object> edit(RandomJson json, List<Object> pool, List<Object> array, int edits) {
+        List<Object> edited = new ArrayList<>(array);
+        for (int i = 0; i < edits; i++) {
+            int operation = json.random().nextInt(3);
+            Object element = pool.get(json.random().nextInt(pool.size()));
+            if(operation == 0 || edited.isEmpty()) {
+                edited.add(json.random().nextInt(edited.size() + 1), element);
+            } else if(operation == 1) {
+                edited.remove(json.random().nextInt(edited.size()));
+            } else {
+                edited.set(json.random().nextInt(edited.size()), element);
+            }
+        }
+        return edited;
+    }
+
+    private static List<JsonNode> elements(RandomJson json, List<Object> array, boolean tape) throws IOException {
+        String document = json.write(array, true);
+        List<JsonNode> elements = new ArrayList<>(array.size());
+        (tape ? RandomJson.tape(document) : RandomJson.tree(document)).elements().forEachRemaining(elements::add);
+        return elements;
+    }
+}
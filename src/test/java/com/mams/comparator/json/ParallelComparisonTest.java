@@ -0,0 +1,109 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelComparisonTest {
+
+    private static final String CONFIG = "compare.elements.names=ALL\n"
+            + "items.matching.property=id\n";
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterClass
+    public static void shutDown() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void reportsLikeSequentialComparison() throws IOException {
+        check(new RandomJson(15), false);
+    }
+
+    @Test
+    public void keepsTheDiffsOfSequentialComparisonUnderBudget() throws IOException {
+        check(new RandomJson(16), true);
+    }
+
+    /**
+     * Compares random documents, with a keyed array big enough to be split too, in tasks of about 20 nodes and
+     * sequentially, with a random compare.max.diffs when there is a budget.
+     */
+    private static void check(RandomJson json, boolean budget) throws IOException {
+        ComparisonPlan plan = ComparisonPlanTest.compile(CONFIG, OrderedArrayDiff.ORDERED_MATCHING);
+        ParallelComparison parallelComparison = new ParallelComparison(POOL, 20);
+        int truncated = 0;
+        for (int i = 0; i < 500; i++) {
+            int maxDiffs = budget ? 1 + json.random().nextInt(30) : 0;
+            Object document = document(json);
+            String src = json.write(document, false), dest = json.write(json.mutate(document, 0.1, 6), true);
+            JsonNode srcJsonNode = i % 2 == 0 ? RandomJson.tree(src) : RandomJson.tape(src);
+            JsonNode destJsonNode = i % 2 == 0 ? RandomJson.tree(dest) : RandomJson.tape(dest);
+            ComparisonContext sequential = new ComparisonContext(maxDiffs, 0, 0);
+            ComparisonContext parallel = new ComparisonContext(maxDiffs, 0, 0);
+            DiffCollector sequentialDiffs = new DiffCollector(), parallelDiffs = new DiffCollector();
+            CompareJsons.compareObject(srcJsonNode, destJsonNode, plan, DiffPath.ROOT, sequential, sequentialDiffs);
+            parallelComparison.compare(srcJsonNode, destJsonNode, plan, parallel, parallelDiffs);
+            assertEquals(src + " / " + dest, StreamingJsonComparatorTest.describe(sequentialDiffs, sequential),
+                    StreamingJsonComparatorTest.describe(parallelDiffs, parallel));
+            if(parallel.getTruncation() != null) {
+                truncated++;
+            }
+        }
+        assertEquals(budget, truncated > 100);
+    }
+
+    private static Object document(RandomJson json) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (String name : new String[]{"id", "name", "value", "tags", "a", "b"}) {
+            fields.put(name, json.document(4));
+        }
+        List<Object> items = new ArrayList<>();
+        for (int size = 30 + json.random().nextInt(30), i = 0; i < size; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", String.valueOf(json.random().nextInt(size)));
+            item.put("value", json.document(3));
+            items.add(item);
+        }
+        fields.put("items", items);
+        return fields;
+    }
+
+    @Test
+    public void stopsTasksPastTheBudget() throws IOException {
+        StringBuilder src = new StringBuilder("{"), dest = new StringBuilder("{");
+        for (int i = 0; i < 100; i++) {
+            src.append(i == 0 ? "" : ",").append("\"f").append(i).append("\":{\"changed\":0");
+            dest.append(i == 0 ? "" : ",").append("\"f").append(i).append("\":{\"changed\":1");
+            for (int j = 0; j < 200; j++) {
+                src.append(",\"v").append(j).append("\":").append(j);
+                dest.append(",\"v").append(j).append("\":").append(j);
+            }
+            src.append('}');
+            dest.append('}');
+        }
+        ComparisonPlan plan = ComparisonPlanTest.compile(CONFIG, null);
+        JsonNode srcJsonNode = RandomJson.tree(src.append('}').toString());
+        JsonNode destJsonNode = RandomJson.tree(dest.append('}').toString());
+
+        ComparisonContext sequential = new ComparisonContext(1, 0, 0), parallel = new ComparisonContext(1, 0, 0);
+        DiffCollector sequentialDiffs = new DiffCollector(), parallelDiffs = new DiffCollector();
+        CompareJsons.compareObject(srcJsonNode, destJsonNode, plan, DiffPath.ROOT, sequential, sequentialDiffs);
+        new ParallelComparison(POOL, 400).compare(srcJsonNode, destJsonNode, plan, parallel, parallelDiffs);
+
+        assertEquals(StreamingJsonComparatorTest.describe(sequentialDiffs, sequential),
+                StreamingJsonComparatorTest.describe(parallelDiffs, parallel));
+        assertTrue("compared " + parallel.getNodesVisited() + " nodes", parallel.getNodesVisited() < 100 * 201 / 4);
+    }
+}
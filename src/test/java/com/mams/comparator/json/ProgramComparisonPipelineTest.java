@@ -0,0 +1,190 @@
+package com.mams.comparator.json;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the pipeline against two stub environments listing the same programs, by other ids and in another order
+ * on the target side. Odd programs differ in cost, and the target payload of program 7 cannot be fetched.
+ */
+public class ProgramComparisonPipelineTest {
+
+    private static final int PROGRAMS = 20;
+
+    private static final int FAILING = 7;
+
+    private final Set<String> fetched = ConcurrentHashMap.newKeySet();
+
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private StubServer server;
+
+    private volatile boolean holdFirst;
+
+    @BeforeClass
+    public static void initialize() throws IOException {
+        CompareJsons.initializeComparison();
+        CompareJsons.initializeFetching(false);
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = new StubServer();
+        server.handle("/source/programs", exchange -> respond(exchange, true));
+        server.handle("/target/programs", exchange -> respond(exchange, false));
+    }
+
+    @After
+    public void stopServer() {
+        released.countDown();
+        server.close();
+    }
+
+    @Test
+    public void reportsProgramsInSourceOrder() throws IOException {
+        RecordingReporter reporter = new RecordingReporter();
+        pipeline(4, 2, false, reporter).run();
+        assertEquals(expectedReport(), reporter.lines());
+    }
+
+    @Test
+    public void reportsProgramsInSourceOrderWhileStreaming() throws IOException {
+        RecordingReporter reporter = new RecordingReporter();
+        pipeline(4, 2, true, reporter).run();
+        assertEquals(expectedReport(), reporter.lines());
+    }
+
+    @Test
+    public void comparesOnlyTheNamedPrograms() throws IOException {
+        RecordingReporter reporter = new RecordingReporter();
+        pipeline(4, 2, false, reporter).run(asList("program 3", "PROGRAM 4", "missing"));
+        assertEquals(asList("start Program 3", "MODIFIED cost 3 -> 103", "end", "start Program 4", "end"),
+                reporter.lines());
+    }
+
+    @Test
+    public void fetchesNoFurtherThanTheWindowAhead() throws Exception {
+        holdFirst = true;
+        RecordingReporter reporter = new RecordingReporter();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread run = new Thread(() -> {
+            try {
+                pipeline(2, 1, false, reporter).run();
+            } catch (IOException | RuntimeException e) {
+                failures.add(e);
+            }
+        });
+        run.start();
+
+        // a window of twice the larger pool: programs 0 to 3 are in flight while program 0 is held back
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!fetched.contains("t3") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        assertTrue(fetched.toString(), fetched.contains("s3") && fetched.contains("t3"));
+        for (int i = 4; i < PROGRAMS; i++) {
+            assertTrue(fetched.toString(), !fetched.contains("s" + i) && !fetched.contains("t" + i));
+        }
+        assertEquals(Collections.emptyList(), reporter.lines());
+
+        released.countDown();
+        run.join(TimeUnit.SECONDS.toMillis(30));
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(expectedReport(), reporter.lines());
+    }
+
+    @Test
+    public void closesTheSourceStreamWhenTheTargetFetchFails() throws Exception {
+        CountDownLatch finished = new CountDownLatch(1);
+        server.handle("/large/source/programs", exchange -> {
+            if(exchange.getRequestURI().getPath().endsWith("/programs")) {
+                StubServer.respond(exchange, 200, "[{\"id\":\"s0\",\"name\":\"Program 0\"}]");
+            } else {
+                HttpTransportTest.writeLargeBody(exchange, 200, finished);
+            }
+        });
+        server.handle("/large/target/programs", exchange -> StubServer.respond(exchange,
+                exchange.getRequestURI().getPath().endsWith("/programs") ? 200 : 404, "[{\"id\":\"t0\",\"name\":\"Program 0\"}]"));
+        RecordingReporter reporter = new RecordingReporter();
+        new ProgramComparisonPipeline("source", server.url("/large/source/programs"), "target",
+                server.url("/large/target/programs"), 2, 1, true, reporter, new ComparisonMetrics()).run();
+        assertEquals(asList("failed Program 0"), reporter.lines());
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+    }
+
+    private ProgramComparisonPipeline pipeline(int fetchParallelism, int diffParallelism, boolean streaming,
+                                               DiffReporter reporter) {
+        return new ProgramComparisonPipeline("source", server.url("/source/programs"), "target",
+                server.url("/target/programs"), fetchParallelism, diffParallelism, streaming, reporter,
+                new ComparisonMetrics());
+    }
+
+    /**
+     * Serves the program list of an environment, or the payload of one of its programs. Earlier source
+     * programs take longer, so that they complete after later ones.
+     */
+    private void respond(HttpExchange exchange, boolean source) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        if("programs".equals(id)) {
+            StringBuilder programs = new StringBuilder("[");
+            for (int i = 0; i < PROGRAMS; i++) {
+                int program = source ? i : PROGRAMS - 1 - i;
+                programs.append(i == 0 ? "" : ",").append("{\"id\":\"").append(source ? "s" : "t").append(program)
+                        .append("\",\"name\":\"").append(source ? "Program " : "PROGRAM ").append(program).append("\"}");
+            }
+            StubServer.respond(exchange, 200, (source ? programs : programs.append(",{\"id\":\"t99\",\"name\":\"Other\"}")) + "]");
+            return;
+        }
+        fetched.add(id);
+        int program = Integer.parseInt(id.substring(1));
+        try {
+            if(source && program == 0 && holdFirst) {
+                released.await();
+            } else if(source) {
+                Thread.sleep((PROGRAMS - program) * 2L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(!source && program == FAILING) {
+            StubServer.respond(exchange, 404, "");
+            return;
+        }
+        int cost = !source && program % 2 == 1 ? program + 100 : program;
+        StubServer.respond(exchange, 200, "{\"name\":\"Program " + program + "\",\"cost\":" + cost + "}");
+    }
+
+    private static List<String> expectedReport() {
+        List<String> report = new ArrayList<>();
+        for (int i = 0; i < PROGRAMS; i++) {
+            if(i == FAILING) {
+                report.add("failed Program " + i);
+                continue;
+            }
+            report.add("start Program " + i);
+            if(i % 2 == 1) {
+                report.add("MODIFIED cost " + i + " -> " + (i + 100));
+            }
+            report.add("end");
+        }
+        return report;
+    }
+}
@@ -0,0 +1,168 @@
+package com.mams.comparator.json;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs watch cycles against two stub environments whose payloads are changed between cycles. The payload of a
+ * program holds its cost, which the target environment may have drifted from.
+ */
+public class ProgramWatcherTest {
+
+    private static final int PROGRAMS = 12;
+
+    private final Map<Integer, Integer> targetCosts = new ConcurrentHashMap<>();
+
+    private final Set<String> fetched = ConcurrentHashMap.newKeySet();
+
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private volatile boolean holdFirst;
+
+    private volatile int listedPrograms = PROGRAMS;
+
+    private StubServer server;
+
+    private ExecutorService fetchPool, diffPool;
+
+    @BeforeClass
+    public static void initialize() throws IOException {
+        CompareJsons.initializeComparison();
+        CompareJsons.initializeFetching(false);
+    }
+
+    @Before
+    public void start() throws IOException {
+        server = new StubServer();
+        server.handle("/source/programs", exchange -> respond(exchange, true));
+        server.handle("/target/programs", exchange -> respond(exchange, false));
+        fetchPool = Executors.newFixedThreadPool(2, ProgramComparisonPipeline.namedDaemonThreads("fetch"));
+        diffPool = Executors.newFixedThreadPool(1, ProgramComparisonPipeline.namedDaemonThreads("diff"));
+    }
+
+    @After
+    public void stop() {
+        released.countDown();
+        fetchPool.shutdownNow();
+        diffPool.shutdownNow();
+        server.close();
+    }
+
+    @Test
+    public void reportsNewAndResolvedDrift() throws IOException {
+        RecordingReporter reporter = new RecordingReporter();
+        ProgramWatcher watcher = watcher(reporter);
+        targetCosts.put(1, 101);
+        watcher.runCycle(fetchPool, diffPool);
+        assertEquals(asList("start Program 1", "MODIFIED cost 1 -> 101", "end"), reporter.lines());
+
+        targetCosts.remove(1);
+        targetCosts.put(5, 105);
+        watcher.runCycle(fetchPool, diffPool);
+        assertEquals(asList("start Program 1", "MODIFIED cost 1 -> 101", "end",
+                "start Program 1 - resolved drift", "MODIFIED cost 1 -> 101", "end",
+                "start Program 5 - new drift", "MODIFIED cost 5 -> 105", "end"), reporter.lines());
+
+        listedPrograms = 5;
+        watcher.runCycle(fetchPool, diffPool);
+        assertEquals("start Program 5 - resolved drift, no longer listed", reporter.lines().get(9));
+        assertEquals(12, reporter.lines().size());
+    }
+
+    @Test
+    public void leavesResolvedDriftOutOfJsonPatches() throws IOException {
+        StringWriter out = new StringWriter();
+        try (DiffReporter reporter = new JsonPatchDiffReporter(out, CompareJsons.getObjectMapper())) {
+            ProgramWatcher watcher = watcher(reporter);
+            targetCosts.put(1, 101);
+            watcher.runCycle(fetchPool, diffPool);
+            targetCosts.remove(1);
+            targetCosts.put(5, 105);
+            watcher.runCycle(fetchPool, diffPool);
+            listedPrograms = 5;
+            watcher.runCycle(fetchPool, diffPool);
+        }
+        assertEquals(RandomJson.tree("{\"Program 1\":[{\"op\":\"replace\",\"path\":\"/cost\",\"value\":101}],"
+                + "\"Program 5 - new drift\":[{\"op\":\"replace\",\"path\":\"/cost\",\"value\":105}]}"),
+                RandomJson.tree(out.toString()));
+    }
+
+    @Test
+    public void fetchesNoFurtherThanTheWindowAhead() throws Exception {
+        holdFirst = true;
+        RecordingReporter reporter = new RecordingReporter();
+        ProgramWatcher watcher = watcher(reporter);
+        Thread cycle = new Thread(() -> {
+            try {
+                watcher.runCycle(fetchPool, diffPool);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        cycle.start();
+
+        // a window of twice the fetch pool: programs 0 to 3 are in flight while program 0 is held back
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!fetched.contains("t3") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        assertTrue(fetched.toString(), fetched.contains("s3") && fetched.contains("t3"));
+        for (int i = 4; i < PROGRAMS; i++) {
+            assertFalse(fetched.toString(), fetched.contains("s" + i) || fetched.contains("t" + i));
+        }
+
+        released.countDown();
+        cycle.join(TimeUnit.SECONDS.toMillis(30));
+        assertFalse(cycle.isAlive());
+        assertEquals(PROGRAMS * 2, fetched.size());
+    }
+
+    private ProgramWatcher watcher(DiffReporter reporter) {
+        return new ProgramWatcher("source", server.url("/source/programs"), "target", server.url("/target/programs"),
+                2, 1, 0, reporter);
+    }
+
+    private void respond(HttpExchange exchange, boolean source) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        if("programs".equals(id)) {
+            StringBuilder programs = new StringBuilder("[");
+            for (int i = 0; i < (source ? PROGRAMS : listedPrograms); i++) {
+                programs.append(i == 0 ? "" : ",").append("{\"id\":\"").append(source ? "s" : "t").append(i)
+                        .append("\",\"name\":\"Program ").append(i).append("\"}");
+            }
+            StubServer.respond(exchange, 200, programs.append("]").toString());
+            return;
+        }
+        fetched.add(id);
+        int program = Integer.parseInt(id.substring(1));
+        if(source && program == 0 && holdFirst) {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int cost = source ? program : targetCosts.getOrDefault(program, program);
+        StubServer.respond(exchange, 200, "{\"name\":\"Program " + program + "\",\"cost\":" + cost + "}");
+    }
+}
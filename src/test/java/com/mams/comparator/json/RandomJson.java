@@ -0,0 +1,140 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Random documents for the tests, drawn from few field names and scalars so that equal subtrees, duplicate
+ * elements and colliding keys are common. A document is built as lists, maps and scalar literals first, so that
+ * the same document can be written out with its fields in another order, and then read as a Jackson tree or a
+ * tape.
+ *
+ * The scalars include numbers that are equal as values but not as JSON nodes (1, 1.0, 1e0, -0.0), which Jackson
+ * tells apart by their type.
+ */
+final class RandomJson {
+
+    private static final String[] NAMES = {"id", "name", "value", "tags", "a", "b", "\u00e9t\u00e9"};
+
+    private static final String[] SCALARS = {"0", "1", "-1", "1.0", "1e0", "-0.0", "0.0", "0.1", "100",
+            "10000000000", "-10000000000", "123456789012345678901234567890", "\"\"", "\"a\"", "\"b\"",
+            "\"1\"", "\"\\u00e9\"", "\"caf\u00e9\"", "\"a\\nb\"", "true", "false", "null"};
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Random random;
+
+    RandomJson(long seed) {
+        random = new Random(seed);
+    }
+
+    Random random() {
+        return random;
+    }
+
+    /**
+     * A document of at most the given depth: a scalar literal, a list or a map of them.
+     */
+    Object document(int depth) {
+        int kind = depth == 0 ? 0 : random.nextInt(3);
+        if(kind == 0) {
+            return scalar();
+        }
+        int size = random.nextInt(5);
+        if(kind == 1) {
+            List<Object> elements = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                elements.add(document(depth - 1));
+            }
+            return elements;
+        }
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            fields.put(NAMES[random.nextInt(NAMES.length)], document(depth - 1));
+        }
+        return fields;
+    }
+
+    String scalar() {
+        return SCALARS[random.nextInt(SCALARS.length)];
+    }
+
+    /**
+     * A copy of the document where each value is replaced by a new one with the given probability, so that most
+     * copies differ from the document in few places, if any.
+     */
+    Object mutate(Object document, double probability, int depth) {
+        if(random.nextDouble() < probability) {
+            return document(depth);
+        }
+        if(document instanceof List) {
+            List<Object> elements = new ArrayList<>();
+            for (Object element : (List<?>) document) {
+                elements.add(mutate(element, probability, depth - 1));
+            }
+            return elements;
+        }
+        if(document instanceof Map) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> field : ((Map<?, ?>) document).entrySet()) {
+                fields.put((String) field.getKey(), mutate(field.getValue(), probability, depth - 1));
+            }
+            return fields;
+        }
+        return document;
+    }
+
+    /**
+     * The document as JSON, with the fields of each object in a random order when shuffled.
+     */
+    String write(Object document, boolean shuffled) {
+        StringBuilder json = new StringBuilder();
+        write(json, document, shuffled);
+        return json.toString();
+    }
+
+    private void write(StringBuilder json, Object document, boolean shuffled) {
+        if(document instanceof List) {
+            json.append('[');
+            String separator = "";
+            for (Object element : (List<?>) document) {
+                json.append(separator);
+                write(json, element, shuffled);
+                separator = ",";
+            }
+            json.append(']');
+        } else if(document instanceof Map) {
+            List<Map.Entry<?, ?>> fields = new ArrayList<>(((Map<?, ?>) document).entrySet());
+            if(shuffled) {
+                Collections.shuffle(fields, random);
+            }
+            json.append('{');
+            String separator = "";
+            for (Map.Entry<?, ?> field : fields) {
+                json.append(separator).append('"').append(field.getKey()).append("\":");
+                write(json, field.getValue(), shuffled);
+                separator = ",";
+            }
+            json.append('}');
+        } else {
+            json.append(document);
+        }
+    }
+
+    static JsonNode tree(String json) throws IOException {
+        return OBJECT_MAPPER.readTree(json);
+    }
+
+    static JsonNode tape(String json) throws IOException {
+        return JsonTape.read(json.getBytes(StandardCharsets.UTF_8), OBJECT_MAPPER);
+    }
+}
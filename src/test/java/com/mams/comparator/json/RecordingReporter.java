@@ -0,0 +1,48 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mams.comparator.json.CompareJsons.DiffModes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reporter keeping what it is told as lines of text, in the order it is told.
+ */
+final class RecordingReporter implements DiffReporter {
+
+    private final List<String> lines = new ArrayList<>();
+
+    @Override
+    public synchronized void startProgram(String programName) {
+        lines.add("start " + programName);
+    }
+
+    @Override
+    public synchronized void diff(DiffPath path, String srcValue, String destValue, DiffModes mode, JsonNode destNode) {
+        lines.add(mode + " " + path.getKey() + " " + srcValue + " -> " + destValue);
+    }
+
+    @Override
+    public synchronized void truncated(String reason) {
+        lines.add("truncated " + reason);
+    }
+
+    @Override
+    public synchronized void endProgram() {
+        lines.add("end");
+    }
+
+    @Override
+    public synchronized void programFailed(String programName, Throwable cause) {
+        lines.add("failed " + programName);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    synchronized List<String> lines() {
+        return new ArrayList<>(lines);
+    }
+}
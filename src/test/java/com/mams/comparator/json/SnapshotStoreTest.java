@@ -0,0 +1,156 @@
+package com.mams.comparator.json;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Fetches payloads of 100 bytes each from a stub environment that tags them with an ETag and answers 304 Not
+ * Modified when the tag sent back is still current.
+ */
+public class SnapshotStoreTest {
+
+    private static final int PAYLOAD_BYTES = 100;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, String> payloads = new ConcurrentHashMap<>();
+
+    private final List<String> downloads = new CopyOnWriteArrayList<>();
+
+    private StubServer server;
+
+    @BeforeClass
+    public static void initialize() throws IOException {
+        CompareJsons.initializeComparison();
+        CompareJsons.initializeFetching(false);
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = new StubServer();
+        server.handle("/programs", exchange -> {
+            String key = exchange.getRequestURI().getPath().substring("/programs/".length());
+            String etag = "\"" + SnapshotStore.sha256(payloads.get(key).getBytes(StandardCharsets.UTF_8)) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if(etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            downloads.add(key);
+            StubServer.respond(exchange, 200, payloads.get(key));
+        });
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void revalidatesStoredPayloads() throws IOException {
+        SnapshotStore store = new SnapshotStore(folder.getRoot().toPath(), 1 << 20);
+        payloads.put("p1", payload("one"));
+        Path first = fetch(store, "p1");
+        Path second = fetch(store, "p1");
+        assertEquals(first, second);
+        assertEquals(1, downloads.size());
+
+        payloads.put("p1", payload("two"));
+        assertArrayEquals(payload("two").getBytes(StandardCharsets.UTF_8), Files.readAllBytes(fetch(store, "p1")));
+        assertEquals(2, downloads.size());
+        assertTrue(Files.exists(first));
+    }
+
+    @Test
+    public void readsSnapshotsWithoutNetwork() throws IOException {
+        SnapshotStore store = new SnapshotStore(folder.getRoot().toPath(), 1 << 20);
+        payloads.put("p1", payload("one"));
+        fetch(store, "p1");
+        server.close();
+
+        SnapshotStore reopened = new SnapshotStore(folder.getRoot().toPath(), 1 << 20);
+        Path latest = reopened.read("qa", "p1", null);
+        assertEquals(latest, reopened.read("qa", "p1", LocalDate.now().toString()));
+        assertArrayEquals(payload("one").getBytes(StandardCharsets.UTF_8), Files.readAllBytes(latest));
+        assertMissing(reopened, "p2", null);
+        assertMissing(reopened, "p1", "2018-06-05");
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedPayloadsButNotPinnedOnes() throws Exception {
+        SnapshotStore store = new SnapshotStore(folder.getRoot().toPath(), 2 * PAYLOAD_BYTES + PAYLOAD_BYTES / 2);
+        payloads.put("a", payload("a"));
+        payloads.put("b", payload("b"));
+        payloads.put("c", payload("c"));
+        payloads.put("d", payload("d"));
+
+        Path a = store.fetch("qa", "a", server.url("/programs/a"));
+        Thread.sleep(20);
+        Path b = fetch(store, "b");
+        Thread.sleep(20);
+        Path c = fetch(store, "c");
+        assertTrue("pinned payload evicted", Files.exists(a));
+        assertFalse(Files.exists(b));
+        assertTrue(Files.exists(c));
+        assertMissing(store, "b", null);
+
+        store.release(a);
+        Thread.sleep(20);
+        Path d = fetch(store, "d");
+        assertFalse(Files.exists(a));
+        assertTrue(Files.exists(c) && Files.exists(d));
+        assertMissing(store, "a", null);
+
+        downloads.clear();
+        fetch(store, "a");
+        assertEquals("evicted payload downloaded again", 1, downloads.size());
+    }
+
+    /**
+     * Fetches a payload and releases it right away, as a comparison does once it has read it.
+     */
+    private Path fetch(SnapshotStore store, String key) throws IOException {
+        Path payload = store.fetch("qa", key, server.url("/programs/" + key));
+        store.release(payload);
+        return payload;
+    }
+
+    private static void assertMissing(SnapshotStore store, String key, String day) throws IOException {
+        try {
+            store.read("qa", key, day);
+            fail("snapshot of " + key + " found");
+        } catch (NoSuchFileException expected) {
+            // pruned or never stored
+        }
+    }
+
+    private static String payload(String value) {
+        StringBuilder payload = new StringBuilder("{\"value\":\"").append(value);
+        while (payload.length() < PAYLOAD_BYTES - 2) {
+            payload.append('.');
+        }
+        return payload.append("\"}").toString();
+    }
+}
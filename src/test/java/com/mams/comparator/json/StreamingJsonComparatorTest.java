@@ -0,0 +1,108 @@
+package com.mams.comparator.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares random documents both while streaming and as trees, and checks that both report the same diffs in
+ * the same order. The destination documents have their fields in another order, so that the streaming side
+ * reads ahead.
+ */
+public class StreamingJsonComparatorTest {
+
+    private static final String CONFIG = "compare.elements.names=ALL\n"
+            + "tags.matching.property=id\n";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Test
+    public void reportsLikeTreeComparison() throws IOException {
+        RandomJson json = new RandomJson(3);
+        ComparisonPlan skipping = ComparisonPlanTest.compile(CONFIG, null);
+        ComparisonPlan ordered = ComparisonPlanTest.compile(CONFIG, OrderedArrayDiff.ORDERED_MATCHING);
+        for (int i = 0; i < 3000; i++) {
+            Object document = document(json);
+            Object other = json.random().nextInt(4) == 0 ? document(json) : json.mutate(document, 0.1, 5);
+            String src = json.write(document, false), dest = json.write(other, true);
+            ComparisonPlan plan = i % 2 == 0 ? skipping : ordered;
+            assertEquals(src + " / " + dest, compareTrees(src, dest, plan, new ComparisonContext()),
+                    compareStreaming(src, dest, plan, new ComparisonContext()));
+        }
+    }
+
+    @Test
+    public void comparesDocumentsMissingOnOneSide() throws IOException {
+        ComparisonPlan plan = ComparisonPlanTest.compile(CONFIG, OrderedArrayDiff.ORDERED_MATCHING);
+        String[][] cases = {{"[1,2]", "{\"a\":1}"}, {"{\"a\":1}", "[1]"}, {"{\"a\":1,\"tags\":[]}", ""}, {"1", "2"}};
+        for (String[] pair : cases) {
+            assertEquals(pair[0] + " / " + pair[1], compareTrees(pair[0], pair[1], plan, new ComparisonContext()),
+                    compareStreaming(pair[0], pair[1], plan, new ComparisonContext()));
+        }
+    }
+
+    @Test
+    public void keepsTheDiffsOfTreeComparisonUnderBudget() throws IOException {
+        RandomJson json = new RandomJson(18);
+        ComparisonPlan plan = ComparisonPlanTest.compile(CONFIG, OrderedArrayDiff.ORDERED_MATCHING);
+        int truncated = 0;
+        for (int i = 0; i < 2000; i++) {
+            Object document = document(json);
+            String src = json.write(document, false), dest = json.write(json.mutate(document, 0.15, 5), true);
+            int maxDiffs = 1 + json.random().nextInt(6);
+            List<String> tree = compareTrees(src, dest, plan, new ComparisonContext(maxDiffs, 0, 0));
+            ComparisonContext context = new ComparisonContext(maxDiffs, 0, 0);
+            assertEquals(src + " / " + dest, tree, compareStreaming(src, dest, plan, context));
+            if(context.getTruncation() != null) {
+                truncated++;
+            }
+        }
+        assertTrue("too few truncated comparisons: " + truncated, truncated > 200);
+    }
+
+    static Object document(RandomJson json) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (String name : new String[]{"id", "name", "value", "tags", "a", "b"}) {
+            if(json.random().nextInt(4) > 0) {
+                fields.put(name, json.document(4));
+            }
+        }
+        return fields;
+    }
+
+    static List<String> compareTrees(String src, String dest, ComparisonPlan plan, ComparisonContext context)
+            throws IOException {
+        DiffCollector diffs = new DiffCollector();
+        CompareJsons.compareObject(RandomJson.tree(src), RandomJson.tree(dest), plan, DiffPath.ROOT, context, diffs);
+        return describe(diffs, context);
+    }
+
+    static List<String> compareStreaming(String src, String dest, ComparisonPlan plan, ComparisonContext context)
+            throws IOException {
+        DiffCollector diffs = new DiffCollector();
+        try (JsonParser srcParser = OBJECT_MAPPER.getFactory().createParser(src);
+             JsonParser destParser = OBJECT_MAPPER.getFactory().createParser(dest)) {
+            new StreamingJsonComparator(plan, context, diffs).compare(srcParser, destParser);
+        }
+        return describe(diffs, context);
+    }
+
+    static List<String> describe(DiffCollector diffs, ComparisonContext context) {
+        List<String> described = new ArrayList<>();
+        diffs.forEach(diff -> described.add(diff.getMode() + " " + diff.getPath().getKey() + " "
+                + diff.getSrcValue() + " -> " + diff.getDestValue()));
+        if(context.getTruncation() != null) {
+            described.add("truncated: " + context.getTruncation());
+        }
+        return described;
+    }
+}